@@ -1,6 +1,7 @@
 plugins {
     java
     `maven-publish`
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "cc.tweaked"
@@ -27,17 +28,36 @@ repositories {
 dependencies {
     compileOnly("com.google.code.findbugs:jsr305:3.0.2")
     implementation("com.google.auto.service:auto-service:1.0.1")
+    annotationProcessor("com.google.auto.service:auto-service:1.0.1")
 
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.9.0")
     testImplementation("org.junit.jupiter:junit-jupiter-params:5.9.0")
     testImplementation("cc.tweaked:cc-tweaked-1.20.1-core:1.113.1")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.9.0")
+
+    jmhCompileOnly("com.google.code.findbugs:jsr305:3.0.2")
+    jmhImplementation("cc.tweaked:cc-tweaked-1.20.1-core:1.113.1")
 }
 
 tasks.test {
     useJUnitPlatform()
 }
 
+tasks.register<JavaExec>("corpusBenchmark") {
+    description = "Generates documentation for a large synthetic corpus, reporting time and memory usage."
+    group = "verification"
+
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("cc.tweaked.javadoc.CorpusBenchmark")
+}
+
+jmh {
+    // Also report allocation per operation (gc.alloc.rate.norm), which is far more stable than timings.
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+}
+
 publishing {
     publications {
         create<MavenPublication>("maven") {
@@ -0,0 +1,153 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import com.sun.source.util.DocTreePath;
+import jdk.javadoc.doclet.Doclet;
+import jdk.javadoc.doclet.DocletEnvironment;
+import jdk.javadoc.doclet.Reporter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.DocumentationTool;
+import javax.tools.ToolProvider;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Runs javadoc over {@link BenchmarkSources}, and captures everything our benchmarks need from javac's model.
+ * <p>
+ * Everything which reads javac's model (such as resolving doc comments) happens inside the doclet. Benchmarks only
+ * time the rendering which happens afterwards.
+ */
+final class BenchmarkModel {
+    private static BenchmarkModel current;
+
+    final Environment env;
+    final Emitter emitter;
+
+    /**
+     * The doc comments of every method in {@link BenchmarkSources#DOCS}.
+     */
+    final List<ResolvedDoc> docs;
+
+    /**
+     * The parameter and return types of every method in {@code types}.
+     */
+    final List<TypeMirror> types;
+
+    /**
+     * The element which {@link #types} belong to.
+     */
+    final Element typesOwner;
+
+    private BenchmarkModel(Environment env, Emitter emitter, List<ResolvedDoc> docs, List<TypeMirror> types, Element typesOwner) {
+        this.env = env;
+        this.emitter = emitter;
+        this.docs = docs;
+        this.types = types;
+        this.typesOwner = typesOwner;
+    }
+
+    static synchronized BenchmarkModel load(int depth) {
+        DocumentationTool tool = ToolProvider.getSystemDocumentationTool();
+        current = null;
+        Boolean ok = tool.getTask(null, null, null, CaptureDoclet.class, List.of("-quiet"), BenchmarkSources.generate(depth)).call();
+        if (ok == null || !ok || current == null) throw new IllegalStateException("Cannot load benchmark sources");
+
+        BenchmarkModel model = current;
+        current = null;
+        return model;
+    }
+
+    public static final class CaptureDoclet implements Doclet {
+        @Override
+        public void init(Locale locale, Reporter reporter) {
+        }
+
+        @Override
+        public String getName() {
+            return "CaptureDoclet";
+        }
+
+        @Override
+        public Set<? extends Option> getSupportedOptions() {
+            return Set.of();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return SourceVersion.RELEASE_8;
+        }
+
+        @Override
+        public boolean run(DocletEnvironment docEnv) {
+            CountingReporter reporter = new CountingReporter();
+            Environment env = Environment.of(docEnv.getElementUtils(), docEnv.getTypeUtils(), docEnv.getDocTrees(), reporter, Path.of("."));
+            if (env == null) return false;
+
+            Set<? extends Element> specified = docEnv.getSpecifiedElements();
+            Map<ExecutableElement, MethodInfo> methods = new LinkedHashMap<>();
+            Map<TypeElement, ClassInfo> classes = new LinkedHashMap<>();
+            LuaDoclet.discover(env, specified, methods, classes);
+
+            List<ResolvedDoc> docs = methodsIn(methods, "Docs").stream()
+                .map(x -> ResolvedDoc.of(env, x, (element, qualified) -> element.getSimpleName().toString()))
+                .collect(Collectors.toList());
+
+            List<TypeMirror> types = new ArrayList<>();
+            List<ExecutableElement> typeMethods = methodsIn(methods, "Types");
+            for (ExecutableElement method : typeMethods) {
+                types.add(method.getReturnType());
+                for (var parameter : method.getParameters()) {
+                    TypeMirror type = parameter.asType(), optional = Helpers.unwrapOptional(type);
+                    types.add(Helpers.unwrapCoerced(optional == null ? type : optional));
+                }
+            }
+
+            Emitter emitter = new Emitter(env, methods, classes, 1, null, null, null, null);
+            if (reporter.count > 0) {
+                throw new IllegalStateException("Benchmark sources produced " + reporter.count + " messages, including: " + reporter.first);
+            }
+
+            current = new BenchmarkModel(env, emitter, docs, types, typeMethods.get(0).getEnclosingElement());
+            return true;
+        }
+
+        private static List<ExecutableElement> methodsIn(Map<ExecutableElement, MethodInfo> methods, String className) {
+            return methods.keySet().stream()
+                .filter(x -> x.getEnclosingElement().getSimpleName().contentEquals(className))
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Counts and discards all messages. Our benchmark sources should not produce any, and if they do we don't want to
+     * print them thousands of times.
+     */
+    private static final class CountingReporter implements Environment.MsgReporter {
+        int count;
+        String first;
+
+        @Override
+        public void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message, @Nullable Element element) {
+            if (count++ == 0) first = message;
+        }
+
+        @Override
+        public void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message, @Nonnull DocTreePath path) {
+            if (count++ == 0) first = message;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates the (in-memory) source files which our benchmarks run over.
+ */
+final class BenchmarkSources {
+    /**
+     * The name of the module with large doc comments.
+     */
+    static final String DOCS = "docs";
+
+    /**
+     * The name of the module at the bottom of a deep inheritance chain.
+     */
+    static final String CHAIN = "chain";
+
+    private BenchmarkSources() {
+    }
+
+    /**
+     * Generate our benchmark sources.
+     *
+     * @param depth The depth of the inheritance chain.
+     * @return The generated source files.
+     */
+    static List<JavaFileObject> generate(int depth) {
+        List<JavaFileObject> files = new ArrayList<>();
+        files.add(source("Docs", docs()));
+        files.add(source("Types", types()));
+        for (int i = 0; i < depth; i++) files.add(source("Chain" + i, chain(i, depth)));
+        return files;
+    }
+
+    private static String docs() {
+        StringBuilder out = new StringBuilder();
+        out.append("""
+            package bench;
+
+            import dan200.computercraft.api.lua.ILuaAPI;
+            import dan200.computercraft.api.lua.LuaFunction;
+
+            /**
+             * A module with large doc comments.
+             *
+             * @cc.module docs
+             */
+            public abstract class Docs implements ILuaAPI {
+            """);
+
+        for (int i = 0; i < 20; i++) {
+            out.append("    /**\n");
+            for (int paragraph = 0; paragraph < 5; paragraph++) {
+                out.append("     * Paragraph ").append(paragraph).append(" of method ").append(i)
+                    .append(", which links to {@link #method").append((i + 1) % 20).append("} and\n")
+                    .append("     * uses {@code inline code}, {@literal nil} and <em>emphasis</em> across several lines of\n")
+                    .append("     * text, much like a real doc comment.\n     * <p>\n");
+            }
+            out.append("""
+                     * <ul>
+                     * <li>A list item, which also
+                     * spans several lines.</li>
+                     * <li>Another list item with a {@link Docs#method0 link}.</li>
+                     * </ul>
+                     *
+                     * <pre>{@code
+                     * local x = docs.method0(1, "two")
+                     * for i = 1, 10 do
+                     *   print(i, x)
+                     * end
+                     * }</pre>
+                     *
+                     * @param x The first argument.
+                     * @param y The second argument.
+                     * @return The result of this method.
+                     * @throws Exception If something goes wrong.
+                     * @cc.usage Use this method.
+                     * @see #method0 Another method.
+                     */
+                    @LuaFunction
+                """);
+            out.append("    public final String method").append(i).append("(int x, String y) throws Exception {\n")
+                .append("        return \"\";\n    }\n\n");
+        }
+
+        return out.append("}\n").toString();
+    }
+
+    private static String types() {
+        return """
+            package bench;
+
+            import dan200.computercraft.api.lua.ILuaAPI;
+            import dan200.computercraft.api.lua.LuaFunction;
+
+            import java.util.*;
+
+            /**
+             * A module with complex types.
+             *
+             * @cc.module types
+             */
+            public abstract class Types implements ILuaAPI {
+                /**
+                 * A nested map.
+                 *
+                 * @param values The values.
+                 * @param key The key.
+                 * @return The nested map.
+                 */
+                @LuaFunction
+                public final Map<String, List<Map<Integer, Double>>> nested(Map<String, List<Boolean>> values, Optional<String> key) {
+                    return null;
+                }
+
+                /**
+                 * A list of lists.
+                 *
+                 * @param values The values.
+                 * @return The list of lists.
+                 */
+                @LuaFunction
+                public final List<List<Map<String, Collection<Long>>>> lists(Optional<List<Map<String, Integer>>> values) {
+                    return null;
+                }
+
+                /**
+                 * An array of maps.
+                 *
+                 * @param values The values.
+                 * @return The array of maps.
+                 */
+                @LuaFunction
+                public final Map<?, ?>[] arrays(Map<String, String>[] values) {
+                    return null;
+                }
+            }
+            """;
+    }
+
+    private static String chain(int index, int depth) {
+        StringBuilder out = new StringBuilder();
+        out.append("package bench;\n\nimport dan200.computercraft.api.lua.LuaFunction;\n");
+        out.append("import dan200.computercraft.api.peripheral.IPeripheral;\n\n");
+        out.append("/**\n * Level ").append(index).append(" of an inheritance chain.\n");
+        if (index == depth - 1) out.append(" *\n * @cc.module chain\n");
+        out.append(" */\npublic abstract class Chain").append(index)
+            .append(index == 0 ? " implements IPeripheral" : " extends Chain" + (index - 1)).append(" {\n");
+
+        for (int i = 0; i < 5; i++) {
+            String name = "level" + index + "Method" + i;
+            out.append("    /**\n     * Method ").append(i).append(" on level ").append(index)
+                .append(", see {@link #").append(name).append("}.\n")
+                .append("     *\n     * @param value The value.\n     * @return The value.\n     */\n")
+                .append("    @LuaFunction\n    public final int ").append(name).append("(int value) {\n")
+                .append("        return value;\n    }\n\n");
+        }
+
+        return out.append("}\n").toString();
+    }
+
+    private static JavaFileObject source(String name, String contents) {
+        return new SimpleJavaFileObject(URI.create("string:///bench/" + name + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return contents;
+            }
+        };
+    }
+}
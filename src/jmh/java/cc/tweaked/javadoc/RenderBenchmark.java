@@ -0,0 +1,95 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.lang.model.type.TypeMirror;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the hottest parts of rendering documentation.
+ * <p>
+ * Run with {@code ./gradlew jmh}. Results are written to {@code build/results/jmh/results.json}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+    /**
+     * The depth of the inheritance chain rendered by {@link #classBuilder(Blackhole)}.
+     */
+    @Param({"5", "20"})
+    public int depth;
+
+    private BenchmarkModel model;
+    private StringWriter buffer;
+    private PrintWriter out;
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        model = BenchmarkModel.load(depth);
+        buffer = new StringWriter();
+        out = new PrintWriter(buffer);
+        output = Files.createTempDirectory("cct_javadoc_jmh").toFile();
+    }
+
+    /**
+     * Render large doc comments, with {@code <pre>} blocks, lists and links.
+     *
+     * @param blackhole The blackhole to consume the output.
+     */
+    @Benchmark
+    public void docComment(Blackhole blackhole) {
+        buffer.getBuffer().setLength(0);
+        for (ResolvedDoc doc : model.docs) new DocConverter(model.env, doc).visit(doc.tree(), out);
+        blackhole.consume(buffer.getBuffer().length());
+    }
+
+    /**
+     * Convert nested {@code Map}, {@code List} and {@code Optional} types.
+     *
+     * @param blackhole The blackhole to consume the output.
+     */
+    @Benchmark
+    public void typeConverter(Blackhole blackhole) {
+        TypeConverter converter = new TypeConverter(model.env, model.typesOwner, x -> null);
+        for (TypeMirror type : model.types) blackhole.consume(converter.visit(type, new StringBuilder()));
+    }
+
+    /**
+     * Render a module at the bottom of a deep inheritance chain.
+     *
+     * @param blackhole The blackhole to consume the output.
+     */
+    @Benchmark
+    public void classBuilder(Blackhole blackhole) {
+        buffer.getBuffer().setLength(0);
+        model.emitter.renderModule(BenchmarkSources.CHAIN, out);
+        blackhole.consume(buffer.getBuffer().length());
+    }
+
+    /**
+     * Render and write every module.
+     *
+     * @throws IOException If the files could not be written.
+     */
+    @Benchmark
+    public void emit() throws IOException {
+        model.emitter.emit(output, false);
+    }
+}
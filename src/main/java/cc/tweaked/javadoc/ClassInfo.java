@@ -65,6 +65,11 @@ public class ClassInfo {
      */
     @Nonnull
     public static Optional<ClassInfo> of(@Nonnull Environment env, @Nonnull TypeElement type) {
+        // Parsing a doc comment is relatively expensive, and most classes are not modules. Check the raw comment
+        // first, and only parse it if it might contain a @cc.module tag.
+        String comment = env.elements().getDocComment(type);
+        if (comment == null || !comment.contains("@cc.module")) return Optional.empty();
+
         DocCommentTree doc = env.trees().getDocCommentTree(type);
         if (doc == null) return Optional.empty();
 
@@ -80,13 +85,14 @@ public class ClassInfo {
 
         Sort sort;
         String kind;
-        if (env.types().isAssignable(type.asType(), env.getLuaApiType())) {
+        TypeHierarchy hierarchy = env.hierarchy();
+        if (hierarchy.isSubtype(type, env.getLuaApiType())) {
             sort = Sort.MODULE;
             kind = API;
-        } else if (env.types().isAssignable(type.asType(), env.getPeripheralType())) {
+        } else if (hierarchy.isSubtype(type, env.getPeripheralType())) {
             sort = Sort.MODULE;
             kind = PERIPHERAL;
-        } else if (env.types().isAssignable(type.asType(), env.getGenericPeripheralType())) {
+        } else if (hierarchy.isSubtype(type, env.getGenericPeripheralType())) {
             sort = Sort.MODULE;
             kind = GENERIC_PERIPHERAL;
         } else {
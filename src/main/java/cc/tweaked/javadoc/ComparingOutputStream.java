@@ -0,0 +1,83 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * An output stream which compares its contents against an existing file as it is written, without writing anything.
+ * <p>
+ * Like {@link IfChangedOutputStream}, this reads the existing file alongside the written data, so neither is held in
+ * memory. Once the two differ, the rest of the written data is discarded.
+ */
+public final class ComparingOutputStream extends OutputStream {
+    private InputStream existing;
+    private final boolean exists;
+    private boolean changed;
+    private byte[] scratch = new byte[0];
+
+    public ComparingOutputStream(@Nonnull Path target) throws IOException {
+        exists = Files.exists(target);
+        existing = exists ? new BufferedInputStream(Files.newInputStream(target)) : null;
+        changed = !exists;
+    }
+
+    /**
+     * Whether the file exists.
+     *
+     * @return Whether there was an existing file to compare against.
+     */
+    public boolean exists() {
+        return exists;
+    }
+
+    /**
+     * Whether the written contents differ from the existing file. This is only valid once the stream has been closed.
+     *
+     * @return Whether the contents differ, or the file does not exist.
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!changed && existing.read() != (b & 0xFF)) diverge();
+    }
+
+    @Override
+    public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+        if (changed) return;
+
+        if (scratch.length < len) scratch = new byte[len];
+        int read = existing.readNBytes(scratch, 0, len);
+        if (read != len || Arrays.mismatch(b, off, off + len, scratch, 0, len) >= 0) diverge();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (existing == null) return;
+
+        // If everything matched so far, the existing file must also have no more data.
+        if (existing.read() >= 0) changed = true;
+        existing.close();
+        existing = null;
+    }
+
+    private void diverge() throws IOException {
+        changed = true;
+        existing.close();
+        existing = null;
+    }
+}
@@ -7,49 +7,36 @@
 package cc.tweaked.javadoc;
 
 import com.sun.source.doctree.*;
-import com.sun.source.util.DocTreePath;
 import com.sun.source.util.DocTrees;
 import com.sun.source.util.SimpleDocTreeVisitor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.lang.model.element.Element;
-import javax.lang.model.element.ExecutableElement;
-import javax.lang.model.element.TypeElement;
-import javax.lang.model.type.DeclaredType;
-import javax.lang.model.type.TypeKind;
-import javax.lang.model.type.TypeMirror;
-import javax.lang.model.util.ElementFilter;
 import javax.tools.Diagnostic;
+import java.io.PrintWriter;
 import java.util.*;
 
-public class DocConverter extends SimpleDocTreeVisitor<Void, StringBuilder> {
+public class DocConverter extends SimpleDocTreeVisitor<Void, PrintWriter> {
     private final Element owner;
     private final Environment environment;
-    private final DocTreePath path;
-    private final Resolver resolve;
+    private ResolvedDoc doc;
 
     private boolean inPre;
     private final Deque<String> indents = new ArrayDeque<>();
     private String indent = "";
 
-    private boolean hasParam = false;
     private final Map<String, List<? extends DocTree>> params = new HashMap<>();
-
-    private boolean hasReturn = false;
     private List<? extends DocTree> returns;
 
-    public DocConverter(Environment environment, Element owner, Resolver resolve) {
-        this.owner = owner;
+    public DocConverter(Environment environment, ResolvedDoc doc) {
+        this.owner = doc.owner();
         this.environment = environment;
-
-        DocCommentTree tree = environment.trees().getDocCommentTree(owner);
-        this.path = tree == null ? null : new DocTreePath(environment.trees().getPath(owner), tree);
-        this.resolve = resolve;
+        this.doc = doc;
     }
 
     public boolean hasParam() {
-        return hasParam;
+        return doc.hasParam();
     }
 
     @Nonnull
@@ -58,7 +45,7 @@ public class DocConverter extends SimpleDocTreeVisitor<Void, StringBuilder> {
     }
 
     public boolean hasReturn() {
-        return hasReturn;
+        return doc.hasReturn();
     }
 
     @Nullable
@@ -67,46 +54,74 @@ public class DocConverter extends SimpleDocTreeVisitor<Void, StringBuilder> {
     }
 
     @Override
-    public Void visitDocComment(DocCommentTree node, StringBuilder stringBuilder) {
-        visit(node.getFullBody(), stringBuilder);
-        stringBuilder.append("\n");
-        visit(node.getBlockTags(), stringBuilder);
+    public Void visitDocComment(DocCommentTree node, PrintWriter out) {
+        visit(node.getFullBody(), out);
+        out.append("\n");
+        visit(node.getBlockTags(), out);
         return null;
     }
 
     @Override
-    public Void visitText(TextTree node, StringBuilder stringBuilder) {
-        emitText(node.getBody(), stringBuilder, false);
+    public Void visitText(TextTree node, PrintWriter out) {
+        emitText(node.getBody(), out, false);
         return null;
     }
 
     @Override
-    public Void visitErroneous(ErroneousTree node, StringBuilder stringBuilder) {
-        emitText(node.getBody(), stringBuilder, false);
+    public Void visitErroneous(ErroneousTree node, PrintWriter out) {
+        emitText(node.getBody(), out, false);
         return null;
     }
 
-    private void emitText(String body, StringBuilder builder, boolean stripFirst) {
-        if (body.indexOf('\n') < 0) {
-            builder.append(body);
-        } else {
-            String[] lines = body.split("\n");
-            for (int i = 0; i < lines.length; i++) {
-                String line = lines[i];
-                if ((i > 0 || stripFirst) && line.startsWith(" ")) line = line.substring(1);
-
-                if (i > 0) {
-                    builder.append("\n");
-                    if (!line.isEmpty()) builder.append(indent);
-                }
+    private void emitText(String body, PrintWriter out, boolean stripFirst) {
+        emitText(body, 0, body.length(), indent, out, stripFirst);
+    }
+
+    /**
+     * Emit a range of text, indenting every line after the first and stripping the leading space left over from the
+     * comment's {@code " * "} prefix.
+     * <p>
+     * This is run for every piece of text in every comment, so writes each line straight from {@code body} rather than
+     * splitting it into separate strings.
+     *
+     * @param body       The text to emit.
+     * @param start      The start of the range to emit.
+     * @param end        The end of the range to emit (exclusive).
+     * @param indent     The indent to write before every non-empty line after the first.
+     * @param out        The writer to write to.
+     * @param stripFirst Whether to strip a leading space from the first line. This is always done for later lines.
+     */
+    static void emitText(String body, int start, int end, String indent, PrintWriter out, boolean stripFirst) {
+        int newline = body.indexOf('\n', start);
+        if (newline < 0 || newline >= end) {
+            out.write(body, start, end - start);
+            return;
+        }
+
+        // Trailing blank lines are dropped.
+        while (end > start && body.charAt(end - 1) == '\n') end--;
+
+        for (int lineStart = start, line = 0; ; line++) {
+            int lineEnd = body.indexOf('\n', lineStart);
+            if (lineEnd < 0 || lineEnd > end) lineEnd = end;
 
-                builder.append(line);
+            int from = lineStart;
+            if ((line > 0 || stripFirst) && from < lineEnd && body.charAt(from) == ' ') from++;
+
+            if (line > 0) {
+                out.write('\n');
+                if (from < lineEnd) out.write(indent);
             }
+
+            out.write(body, from, lineEnd - from);
+
+            if (lineEnd >= end) return;
+            lineStart = lineEnd + 1;
         }
     }
 
     @Override
-    public Void visitLiteral(LiteralTree node, StringBuilder stringBuilder) {
+    public Void visitLiteral(LiteralTree node, PrintWriter out) {
         String body = node.getBody().getBody();
 
         if (inPre) {
@@ -114,7 +129,10 @@ public class DocConverter extends SimpleDocTreeVisitor<Void, StringBuilder> {
             // block, as this will have inserted backticks already.
             // We also attempt to normalise code blocks here by trimming leading spaces (due to the "* ") and any
             // whitespace.
-            emitText(body.strip(), stringBuilder, true);
+            int start = 0, end = body.length();
+            while (start < end && Character.isWhitespace(body.charAt(start))) start++;
+            while (end > start && Character.isWhitespace(body.charAt(end - 1))) end--;
+            emitText(body, start, end, indent, out, true);
             return null;
         }
 
@@ -122,162 +140,139 @@ public class DocConverter extends SimpleDocTreeVisitor<Void, StringBuilder> {
             case "nil":
             case "true":
             case "false":
-                stringBuilder.append("[`").append(body).append("`]");
+                out.append("[`").append(body).append("`]");
                 return null;
             default:
                 if (node.getKind() == DocTree.Kind.CODE) {
-                    stringBuilder.append("`").append(body).append("`");
+                    out.append("`").append(body).append("`");
                 } else {
-                    stringBuilder.append(body);
+                    out.append(body);
                 }
                 return null;
         }
     }
 
     @Override
-    public Void visitLink(LinkTree node, StringBuilder stringBuilder) {
+    public Void visitLink(LinkTree node, PrintWriter out) {
         if (!node.getLabel().isEmpty()) {
-            stringBuilder.append("[");
-            visit(node.getLabel(), stringBuilder);
-            stringBuilder.append("]");
+            out.append("[");
+            visit(node.getLabel(), out);
+            out.append("]");
         }
-        stringBuilder.append("[`");
-        visit(node.getReference(), stringBuilder);
-        stringBuilder.append("`]");
+        out.append("[`");
+        visit(node.getReference(), out);
+        out.append("`]");
         return null;
     }
 
     @Override
-    public Void visitReference(ReferenceTree node, StringBuilder stringBuilder) {
-        Element referred = environment.trees().getElement(DocTreePath.getPath(path, node));
-        if (referred == null) {
-            environment.message(Diagnostic.Kind.ERROR, "Cannot resolve reference.", owner, node);
-            stringBuilder.append(node.getSignature());
-            return null;
-        }
-
-        String alternative = resolve.resolve(referred, !node.getSignature().startsWith("#"));
-        if (alternative == null) {
-            environment.message(Diagnostic.Kind.ERROR, "Cannot convert " + referred + " into a Lua reference.", owner, node);
-            stringBuilder.append(node.getSignature());
-            return null;
-        }
-
-        stringBuilder.append(alternative);
+    public Void visitReference(ReferenceTree node, PrintWriter out) {
+        // Failed references are reported when resolving, so we just fall back to the Java name here.
+        String alternative = doc.reference(node);
+        out.append(alternative == null ? node.getSignature() : alternative);
         return null;
     }
 
     @Override
-    public Void visitHidden(HiddenTree node, StringBuilder stringBuilder) {
-        stringBuilder.append("@local\n");
+    public Void visitHidden(HiddenTree node, PrintWriter out) {
+        out.append("@local\n");
         return null;
     }
 
     @Override
-    public Void visitSince(SinceTree node, StringBuilder stringBuilder) {
-        stringBuilder.append("@since ");
-        visit(node.getBody(), stringBuilder);
-        stringBuilder.append("\n");
+    public Void visitSince(SinceTree node, PrintWriter out) {
+        out.append("@since ");
+        visit(node.getBody(), out);
+        out.append("\n");
         return null;
     }
 
     @Override
-    public Void visitParam(ParamTree node, StringBuilder stringBuilder) {
+    public Void visitParam(ParamTree node, PrintWriter out) {
         params.put(node.getName().getName().toString(), node.getDescription());
         return null;
     }
 
     @Override
-    public Void visitReturn(ReturnTree node, StringBuilder stringBuilder) {
+    public Void visitReturn(ReturnTree node, PrintWriter out) {
         returns = node.getDescription();
         return null;
     }
 
     @Override
-    public Void visitThrows(ThrowsTree node, StringBuilder stringBuilder) {
+    public Void visitThrows(ThrowsTree node, PrintWriter out) {
         List<? extends DocTree> desc = node.getDescription();
         if (!desc.isEmpty() && desc.get(0).getKind() == DocTree.Kind.TEXT && ((TextTree) desc.get(0)).getBody().startsWith("(hidden)")) {
             return null;
         }
 
-        stringBuilder.append("@throws ");
-        visit(desc, stringBuilder);
-        stringBuilder.append("\n");
+        out.append("@throws ");
+        visit(desc, out);
+        out.append("\n");
         return null;
     }
 
     @Override
-    public Void visitDeprecated(DeprecatedTree node, StringBuilder stringBuilder) {
-        stringBuilder.append("@deprecated ");
-        visit(node.getBody(), stringBuilder);
-        stringBuilder.append("\n");
+    public Void visitDeprecated(DeprecatedTree node, PrintWriter out) {
+        out.append("@deprecated ");
+        visit(node.getBody(), out);
+        out.append("\n");
         return null;
     }
 
     @Override
-    public Void visitUnknownBlockTag(UnknownBlockTagTree node, StringBuilder stringBuilder) {
+    public Void visitUnknownBlockTag(UnknownBlockTagTree node, PrintWriter out) {
         String name = node.getTagName();
-        if (!name.startsWith("cc.")) return super.visitUnknownBlockTag(node, stringBuilder);
+        if (!name.startsWith("cc.")) return super.visitUnknownBlockTag(node, out);
 
         String actualName = name.substring(3);
-        switch (actualName) {
-            case "param":
-            case "tparam":
-                hasParam = true;
-                break;
-            case "return":
-            case "treturn":
-                hasReturn = true;
-                break;
-            case "module":
-                return null;
-        }
+        if (actualName.equals("module")) return null;
 
-        stringBuilder.append("@").append(actualName);
+        out.append("@").append(actualName);
 
         List<? extends DocTree> children = node.getContent();
         if (children.isEmpty() || children.get(0).getKind() != DocTree.Kind.TEXT || !((TextTree) children.get(0)).getBody().startsWith("[")) {
-            stringBuilder.append(" ");
+            out.append(" ");
         }
 
-        visit(children, stringBuilder);
-        stringBuilder.append("\n");
+        visit(children, out);
+        out.append("\n");
         return null;
     }
 
     @Override
-    public Void visitSee(SeeTree node, StringBuilder stringBuilder) {
+    public Void visitSee(SeeTree node, PrintWriter out) {
         List<? extends DocTree> ref = node.getReference();
         if (ref.isEmpty()) return null;
 
-        stringBuilder.append("@see ");
-        visit(ref.get(0), stringBuilder);
-        stringBuilder.append(" ");
-        visit(ref.subList(1, ref.size()), stringBuilder);
-        stringBuilder.append("\n");
+        out.append("@see ");
+        visit(ref.get(0), out);
+        out.append(" ");
+        visit(ref.subList(1, ref.size()), out);
+        out.append("\n");
         return null;
     }
 
     @Override
-    public Void visitStartElement(StartElementTree node, StringBuilder stringBuilder) {
+    public Void visitStartElement(StartElementTree node, PrintWriter out) {
         if (node.getName().contentEquals("pre")) {
             inPre = true;
-            stringBuilder.append("```lua");
+            out.append("```lua");
             if (!node.getAttributes().isEmpty()) {
-                stringBuilder.append(" {");
+                out.append(" {");
                 boolean first = true;
                 for (var attribute : node.getAttributes()) {
                     if (first) {
                         first = false;
                     } else {
-                        stringBuilder.append(' ');
+                        out.append(' ');
                     }
                     var attr = (AttributeTree) attribute;
-                    stringBuilder.append(attr.getName()).append('=').append(attr.getValue());
+                    out.append(attr.getName()).append('=').append(String.valueOf(attr.getValue()));
                 }
-                stringBuilder.append('}');
+                out.append('}');
             }
-            stringBuilder.append('\n');
+            out.append('\n');
         } else if (node.getName().contentEquals("p")) {
             // No-op
         } else if (node.getName().contentEquals("ul")) {
@@ -285,131 +280,98 @@ public class DocConverter extends SimpleDocTreeVisitor<Void, StringBuilder> {
         } else if (node.getName().contentEquals("li")) {
             indents.push(indent);
             indent += "   ";
-            stringBuilder.append(" - ");
+            out.append(" - ");
         } else if (node.getName().contentEquals("em") && node.getAttributes().isEmpty()) {
-            stringBuilder.append("*");
+            out.append("*");
         } else if (node.getName().contentEquals("strong") && node.getAttributes().isEmpty()) {
-            stringBuilder.append("**");
+            out.append("**");
         } else {
-            stringBuilder.append("<").append(node.getName());
-            visit(node.getAttributes(), stringBuilder);
-            stringBuilder.append(node.isSelfClosing() ? " />" : ">");
+            out.append("<").append(node.getName());
+            visit(node.getAttributes(), out);
+            out.append(node.isSelfClosing() ? " />" : ">");
         }
         return null;
     }
 
     @Override
-    public Void visitAttribute(AttributeTree node, StringBuilder stringBuilder) {
-        stringBuilder.append(' ').append(node.getName());
+    public Void visitAttribute(AttributeTree node, PrintWriter out) {
+        out.append(' ').append(node.getName());
         switch (node.getValueKind()) {
             default:
             case EMPTY:
                 return null;
             case DOUBLE:
-                stringBuilder.append("=\"").append(node.getValue()).append('"');
+                out.append("=\"").append(String.valueOf(node.getValue())).append('"');
                 return null;
             case SINGLE:
-                stringBuilder.append("='").append(node.getValue()).append('\'');
+                out.append("='").append(String.valueOf(node.getValue())).append('\'');
                 return null;
             case UNQUOTED:
-                stringBuilder.append('=').append(node.getValue());
+                out.append('=').append(String.valueOf(node.getValue()));
                 return null;
         }
     }
 
     @Override
-    public Void visitEndElement(EndElementTree node, StringBuilder stringBuilder) {
+    public Void visitEndElement(EndElementTree node, PrintWriter out) {
         if (node.getName().contentEquals("pre")) {
             inPre = false;
-            stringBuilder.append(indent).append("\n```");
+            out.append(indent).append("\n```");
         } else if (node.getName().contentEquals("ul")) {
             // No-op
         } else if (node.getName().contentEquals("li")) {
             indent = indents.pop();
         } else if (node.getName().contentEquals("em")) {
-            stringBuilder.append("*");
+            out.append("*");
         } else if (node.getName().contentEquals("strong")) {
-            stringBuilder.append("**");
+            out.append("**");
         } else {
-            stringBuilder.append("</").append(node.getName()).append(">");
+            out.append("</").append(node.getName()).append(">");
         }
         return null;
     }
 
     @Override
-    public Void visitEntity(EntityTree node, StringBuilder stringBuilder) {
-        stringBuilder.append("&").append(node.getName()).append(";");
+    public Void visitEntity(EntityTree node, PrintWriter out) {
+        out.append("&").append(node.getName()).append(";");
         return null;
     }
 
     @Override
-    public Void visitInheritDoc(InheritDocTree node, StringBuilder out) {
-        DocCommentTree tree = null;
-        if (owner instanceof ExecutableElement currentMethod) {
-            Queue<TypeElement> types = new ArrayDeque<>();
-            TypeElement currentType = (TypeElement) currentMethod.getEnclosingElement();
-            addSupers(types, currentType);
-
-            TypeElement superType;
-            top:
-            while ((superType = types.poll()) != null) {
-                for (ExecutableElement superMethod : ElementFilter.methodsIn(superType.getEnclosedElements())) {
-                    if (environment.elements().overrides(currentMethod, superMethod, currentType)) {
-                        tree = environment.trees().getDocCommentTree(superMethod);
-                        if (tree != null) break top;
-                    }
-                }
-
-                addSupers(types, superType);
-            }
-        }
-
-        if (tree == null) {
-            report(node, "Cannot resolve parent doc comment.");
-            return null;
-        } else {
-            return visit(tree, out);
+    public Void visitInheritDoc(InheritDocTree node, PrintWriter out) {
+        ResolvedDoc parent = doc.inherited();
+        if (parent == null) return null;
+
+        ResolvedDoc current = doc;
+        doc = parent;
+        try {
+            return visit(parent.tree(), out);
+        } finally {
+            doc = current;
         }
     }
 
-    private static void addSupers(Queue<TypeElement> queue, TypeElement element) {
-        if (element.getSuperclass().getKind() == TypeKind.DECLARED) {
-            queue.add((TypeElement) ((DeclaredType) element.getSuperclass()).asElement());
-        }
-
-        for (TypeMirror iface : element.getInterfaces()) {
-            if (iface.getKind() == TypeKind.DECLARED) queue.add((TypeElement) ((DeclaredType) iface).asElement());
-        }
-    }
-
-
     @Override
-    protected Void defaultAction(DocTree node, StringBuilder stringBuilder) {
+    protected Void defaultAction(DocTree node, PrintWriter out) {
         report(node, "Visiting unknown node " + node.getKind());
         return null;
     }
 
     protected void report(DocTree node, String message) {
-        DocTrees trees = environment.trees();
-        environment.trees().printMessage(
-            Diagnostic.Kind.ERROR, message, node,
-            trees.getDocCommentTree(owner), trees.getPath(owner).getCompilationUnit()
-        );
+        report(environment, owner, node, message);
     }
 
-    public void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message, @Nonnull Element element) {
-        if (path != null) environment.message(kind, message, element);
+    static void report(Environment environment, Element owner, DocTree node, String message) {
+        environment.report(Diagnostic.Kind.ERROR, () -> {
+            DocTrees trees = environment.trees();
+            trees.printMessage(
+                Diagnostic.Kind.ERROR, message, node,
+                trees.getDocCommentTree(owner), environment.location(owner).path().getCompilationUnit()
+            );
+        });
     }
 
-    public interface Resolver {
-        /**
-         * Resove a reference to an element.
-         *
-         * @param element   The element to resolve.
-         * @param qualified Whether this term was referenced unqualified ({@code #foo}) or qualified ({@code Foo#foo()}).
-         * @return The Lua reference, or {@code null} if it could not be resolved.
-         */
-        @Nullable
-        String resolve(Element element, boolean qualified);
+    public void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message, @Nonnull Element element) {
+        if (doc.tree() != null) environment.message(kind, message, element);
     }
 }
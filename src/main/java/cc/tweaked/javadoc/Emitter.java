@@ -8,9 +8,6 @@ package cc.tweaked.javadoc;
 
 import com.google.auto.common.MoreElements;
 import com.google.auto.common.MoreTypes;
-import com.sun.source.tree.CompilationUnitTree;
-import com.sun.source.tree.LineMap;
-import com.sun.source.util.DocTrees;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -21,27 +18,66 @@ import javax.lang.model.type.TypeMirror;
 import javax.tools.Diagnostic;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class Emitter {
-    private final Map<ClassInfo, String> typeBuilders = new HashMap<>();
+    /**
+     * The version of the symbol index written by {@link #writeSymbolIndex(Path)}.
+     */
+    static final int SYMBOL_INDEX_VERSION = 2;
+
+    private final List<ClassModel> classes;
+    private final List<ClassModel> hidden;
     private final List<MethodCollection> methodBuilders;
 
     private final Environment env;
     private final Map<TypeElement, ClassInfo> types;
     private final Map<ExecutableElement, MethodInfo> methods;
-    private final Path root;
+    private final int threads;
+    private final SnippetCache cache;
+    private final Timings timings;
+    private final Shard shard;
+    private final LinkIndex links;
+
+    /**
+     * The resolver for each module. These are reused, so that {@link OverrideIndex} can cache inherited doc comments.
+     */
+    private final Map<ClassInfo, ResolvedDoc.Resolver> resolvers = new HashMap<>();
+
+    /**
+     * Converted parameter and return types. These are only computed when building models, on the doclet's thread.
+     */
+    private final TypeConverter.Cache typeCache = new TypeConverter.Cache();
 
-    public Emitter(Environment env, Map<ExecutableElement, MethodInfo> methods, Map<TypeElement, ClassInfo> types, Path root) {
+    /**
+     * The number of unwritten methods which we did not render.
+     */
+    private int skippedMethods;
+
+    public Emitter(
+        Environment env, Map<ExecutableElement, MethodInfo> methods, Map<TypeElement, ClassInfo> types, int threads,
+        @Nullable SnippetCache cache, @Nullable Timings timings, @Nullable Shard shard, @Nullable LinkIndex links
+    ) {
         this.env = env;
         this.types = types;
         this.methods = methods;
-        this.root = root.toAbsolutePath();
+        this.threads = threads;
+        this.cache = cache;
+        this.timings = timings;
+        this.shard = shard;
+        this.links = links;
 
+        // javac is not thread-safe, so we first extract everything we need from its model on the current thread. After
+        // this, rendering only touches immutable data, and so may be done in parallel.
         Map<Element, List<MethodInfo>> methodsGroups = new HashMap<>();
         for (MethodInfo method : methods.values()) {
             methodsGroups
@@ -49,23 +85,112 @@ public class Emitter {
                 .add(method);
         }
         methodBuilders = methodsGroups.entrySet().stream()
-            .map(pair -> {
-                ClassInfo klass = resolveType(pair.getKey());
-                // Methods are sorted by their position within the file.
-                List<EmittedMethod> emitted = pair.getValue().stream()
-                    .map(method -> methodBuilder(klass, method))
-                    .sorted(Comparator.comparing(x -> getPosition(x.method.element())))
-                    .collect(Collectors.toList());
-                return new MethodCollection(klass, pair.getKey(), emitted);
-            })
+            .map(pair -> new MethodCollection(resolveType(pair.getKey()), pair.getKey(), pair.getValue()))
             .collect(Collectors.toList());
 
-        for (ClassInfo type : types.values()) typeBuilders.put(type, classBuilder(type));
+        // Only render modules which are written to disk. Hidden modules are still resolved, so we report any problems
+        // with them.
+        classes = new ArrayList<>();
+        hidden = new ArrayList<>();
+        for (ClassInfo info : types.values()) {
+            if (isWrittenHere(info)) {
+                classes.add(classModel(info));
+            } else if (inShard(info)) {
+                hidden.add(classModel(info));
+            }
+        }
+    }
 
-        methodBuilders.stream().flatMap(x -> x.methods.stream()).filter(x -> !x.isUsed()).forEach(e -> {
-            MethodInfo info = e.method;
-            env.message(Diagnostic.Kind.NOTE, "Cannot find owner for " + info.name(), info.element());
+    /**
+     * Whether a module is written to disk by some process. Hidden modules are never written, and so never rendered.
+     *
+     * @param info The module to check.
+     * @return Whether this module is written, either by this shard or another.
+     */
+    private static boolean isWritten(@Nullable ClassInfo info) {
+        return info != null && !info.isHidden();
+    }
+
+    /**
+     * Whether a module should be rendered by this process.
+     *
+     * @param info The module to check.
+     * @return Whether this module belongs to the current {@link Shard}. This is always true if sharding is disabled.
+     */
+    private boolean inShard(@Nullable ClassInfo info) {
+        return info != null && (shard == null || shard.contains(info.name()));
+    }
+
+    /**
+     * Whether a module is written to disk by this process.
+     *
+     * @param info The module to check.
+     * @return Whether this module is written and belongs to the current {@link Shard}.
+     */
+    private boolean isWrittenHere(@Nullable ClassInfo info) {
+        return isWritten(info) && inShard(info);
+    }
+
+    /**
+     * Render a list of items, using a fork-join pool if multiple threads are available.
+     * <p>
+     * Messages reported while rendering are buffered and printed in order, so both the output and any diagnostics are
+     * the same regardless of the number of threads.
+     *
+     * @param items  The items to render.
+     * @param render The function to render a single item. This must not access javac's model.
+     * @param <T>    The type of item to render.
+     * @param <R>    The rendered result.
+     * @return The rendered items, in the same order as the input.
+     */
+    private <T, R> List<R> render(List<T> items, Function<T, R> render) {
+        if (threads <= 1 || items.size() <= 1) return items.stream().map(render).collect(Collectors.toList());
+
+        // Work on the pool's threads is not counted by the timings' per-thread counters, so must be added explicitly.
+        Function<T, R> task = timings == null ? render : item -> timings.worker(() -> render.apply(item));
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<Environment.Buffered<R>>> tasks = items.stream()
+                .map(item -> pool.submit(() -> env.buffered(() -> task.apply(item))))
+                .collect(Collectors.toList());
+            return tasks.stream().map(x -> x.join().get()).collect(Collectors.toList());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Render a snippet of Lua, reusing it from the {@link SnippetCache} if possible.
+     * <p>
+     * Snippets are only cached if they reported no messages while rendering, so that we never lose diagnostics by
+     * reusing a cached snippet.
+     *
+     * @param key    The key of this snippet in the cache, or {@code null} if caching is disabled.
+     * @param render The function to render this snippet.
+     * @param out    The writer to write the snippet to.
+     */
+    private void cached(@Nullable String key, @Nonnull Consumer<PrintWriter> render, @Nonnull PrintWriter out) {
+        if (cache == null || key == null) {
+            render.accept(out);
+            return;
+        }
+
+        String snippet = cache.get(key);
+        if (snippet != null) {
+            out.write(snippet);
+            return;
+        }
+
+        StringWriter buffer = new StringWriter();
+        Environment.Buffered<Void> rendered = env.buffered(() -> {
+            render.accept(new PrintWriter(buffer));
+            return null;
         });
+        if (!rendered.hasMessages()) cache.put(key, buffer.toString());
+        rendered.get();
+
+        out.write(buffer.toString());
     }
 
     @Nullable
@@ -82,8 +207,70 @@ public class Emitter {
     }
 
     @Nonnull
-    private String classBuilder(@Nonnull ClassInfo info) {
-        StringBuilder builder = new StringBuilder();
+    private ClassModel classModel(@Nonnull ClassInfo info) {
+        ResolvedDoc doc = ResolvedDoc.of(env, info.element(), resolver(info));
+        SourceLocation location = env.location(info.element());
+        String key = cache == null ? null : SnippetCache.key(
+            "class", info.name(), info.kind(), info.sort().name(), doc.fingerprint(), location.sourceTag()
+        );
+        return new ClassModel(info, info.element().getQualifiedName().toString(), doc, location, key);
+    }
+
+    private void classBuilder(@Nonnull ClassModel model, @Nonnull PrintWriter builder) {
+        Events.ClassRendered event = new Events.ClassRendered();
+        event.begin();
+
+        if (timings == null) {
+            renderClass(model, builder);
+        } else {
+            timings.module(model.info.name(), () -> renderClass(model, builder));
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.module = model.info.name();
+            event.className = model.javaName;
+            event.methods = methodBuilders.stream().filter(x -> x.owners.contains(model.info)).mapToInt(x -> x.methods.size()).sum();
+            event.commit();
+        }
+    }
+
+    private void renderClass(@Nonnull ClassModel model, @Nonnull PrintWriter builder) {
+        ClassInfo info = model.info;
+        cached(model.key, out -> classHeader(model, out), builder);
+
+        String prefix = prefix(info);
+        for (MethodCollection collection : methodsOf(info)) collection.emit(info, prefix, builder);
+    }
+
+    private static String prefix(ClassInfo info) {
+        return info.typeName() == null ? "" : info.typeName() + ".";
+    }
+
+    /**
+     * Get all methods which appear in a module, in the order they should be written.
+     *
+     * @param info The module.
+     * @return The collections of methods in this module.
+     */
+    private List<MethodCollection> methodsOf(ClassInfo info) {
+        return methodBuilders.stream()
+            .filter(x -> x.owners.contains(info))
+            .sorted((x, y) -> {
+                // Prioritise the current element above everything else.
+                if (info.element() == x.enclosing) return -1;
+                if (info.element() == y.enclosing) return 1;
+
+                // Then just sort based on depth in the type hierarchy, with subclasses first.
+                return x.depth == y.depth
+                    ? x.name.compareTo(y.name)
+                    : -Integer.compare(x.depth, y.depth);
+            })
+            .collect(Collectors.toList());
+    }
+
+    private void classHeader(@Nonnull ClassModel model, @Nonnull PrintWriter builder) {
+        ClassInfo info = model.info;
 
         if (info.sort() == ClassInfo.Sort.TYPE) {
             builder.append("--- ");
@@ -92,9 +279,9 @@ public class Emitter {
         }
 
         builder.append("--[[- ");
-        new DocConverter(env, info.element(), (x, q) -> resolveTermName(info, x, q)).visit(info.doc(), builder);
+        new DocConverter(env, model.doc).visit(model.doc.tree(), builder);
 
-        writeSource(builder, info.element());
+        builder.append(model.source);
 
         switch (info.sort()) {
             case MODULE -> {
@@ -107,25 +294,9 @@ public class Emitter {
             }
             default -> throw new IllegalStateException("Unknown kind " + info.kind());
         }
-
-        String prefix = info.typeName() == null ? "" : info.typeName() + ".";
-        methodBuilders.stream()
-            .filter(x -> x.appearsIn(info))
-            .sorted((x, y) -> {
-                // Prioritise the current element above everything else.
-                if (info.element() == x.enclosing) return -1;
-                if (info.element() == y.enclosing) return 1;
-
-                // Then just sort based on depth in the type hierarchy, with subclasses first.
-                return x.depth == y.depth
-                    ? x.enclosing.getSimpleName().toString().compareTo(y.enclosing.getSimpleName().toString())
-                    : -Integer.compare(x.depth, y.depth);
-            })
-            .forEach(c -> c.emit(prefix, builder));
-        return builder.toString();
     }
 
-    private static void appendModule(StringBuilder builder, ClassInfo info) {
+    private static void appendModule(PrintWriter builder, ClassInfo info) {
         if (info.kind().isEmpty()) {
             builder.append("@module ");
         } else {
@@ -135,66 +306,193 @@ public class Emitter {
     }
 
     @Nonnull
-    private EmittedMethod methodBuilder(@Nullable ClassInfo klass, @Nonnull MethodInfo info) {
+    private MethodModel methodModel(@Nullable ClassInfo klass, @Nonnull MethodInfo info) {
         ExecutableElement method = info.element();
 
         boolean isStatic = method.getModifiers().contains(Modifier.STATIC);
         boolean isGeneric = klass != null && klass.sort() == ClassInfo.Sort.MODULE && klass.kind().equals(ClassInfo.GENERIC_PERIPHERAL);
-        if (isStatic && !isGeneric) {
-            env.message(Diagnostic.Kind.ERROR, "Cannot have static methods on non-generic sources", method);
-        }
-
-        DocConverter doc = new DocConverter(env, method, (x, q) -> resolveTermName(klass, x, q));
-        TypeConverter type = new TypeConverter(env, method, this::resolveTypeName);
 
-        StringBuilder builder = new StringBuilder();
-        builder.append("--[[- ");
-        doc.visit(info.doc(), builder);
-        builder.append("\n");
-        writeSource(builder, method);
+        ResolvedDoc doc = ResolvedDoc.of(env, method, resolver(klass));
+        SourceLocation location = env.location(method);
 
-        String signature;
+        List<ParameterModel> parameters = List.of();
+        String signature = "";
         if (!doc.hasParam()) {
             List<? extends VariableElement> arguments = method.getParameters();
             if (isGeneric) arguments = arguments.subList(1, arguments.size());
+            parameters = arguments.stream().map(this::parameterModel).collect(Collectors.toList());
+            signature = parameters.stream()
+                .filter(x -> !x.irrelevant).map(x -> x.any ? "..." : x.name)
+                .collect(Collectors.joining(", "));
+        }
+
+        boolean hasArbitraryParameters = method.getParameters().stream()
+            .map(Element::asType)
+            .anyMatch(x -> !Helpers.isIrrelevant(x) && !Helpers.isKnown(x));
+
+        TypeMirror returnType = method.getReturnType();
+        String returns = null;
+        if (!doc.hasReturn() && returnType.getKind() != TypeKind.VOID) {
+            returns = new TypeConverter(env, method, this::resolveTypeName, typeCache).convert(returnType);
+            if (isNullable(method)) returns += "|nil";
+        }
+
+        boolean returnsAny = Helpers.isAny(returnType), returnsKnown = Helpers.isKnown(returnType);
 
-            List<String> parameters = new ArrayList<>();
-            for (VariableElement element : arguments) {
-                String name = argBuilder(builder, doc, element);
-                if (name != null) parameters.add(name);
+        String key = null;
+        if (cache != null) {
+            List<String> parts = new ArrayList<>(List.of(
+                "method", info.name(), String.join(",", info.otherNames()), doc.fingerprint(), location.sourceTag(),
+                String.valueOf(isStatic), String.valueOf(isGeneric), signature, String.valueOf(hasArbitraryParameters),
+                String.valueOf(returns), String.valueOf(returnsAny), String.valueOf(returnsKnown)
+            ));
+            for (ParameterModel parameter : parameters) {
+                parts.add(parameter.name + ":" + parameter.irrelevant + ":" + parameter.any + ":" + parameter.optional + ":" + parameter.type);
             }
-            signature = String.join(", ", parameters);
+            key = SnippetCache.key(parts.toArray(new String[0]));
+        }
+
+        return new MethodModel(
+            info, javaName(method), isStatic, isGeneric, doc, location,
+            parameters, signature, hasArbitraryParameters, returns, returnsAny, returnsKnown, key
+        );
+    }
+
+    @Nonnull
+    private ParameterModel parameterModel(@Nonnull VariableElement element) {
+        TypeMirror type = element.asType();
+        if (Helpers.isIrrelevant(type)) return new ParameterModel(element, true, false, false, null);
+        if (Helpers.isAny(type)) return new ParameterModel(element, false, true, false, null);
+
+        TypeMirror optional = Helpers.unwrapOptional(type);
+        String converted = new TypeConverter(env, element, this::resolveTypeName, typeCache)
+            .convert(Helpers.unwrapCoerced(optional == null ? type : optional));
+        return new ParameterModel(element, false, false, optional != null, converted);
+    }
+
+    private void methodBuilder(@Nonnull MethodModel model, @Nonnull String prefix, @Nonnull PrintWriter builder) {
+        Events.MethodRendered event = new Events.MethodRendered();
+        event.begin();
+
+        // If we're recording, render to a buffer first so we can record the size of this method.
+        StringWriter buffer = event.isEnabled() ? new StringWriter() : null;
+        PrintWriter out = buffer == null ? builder : new PrintWriter(buffer);
+
+        String key = model.key == null ? null : SnippetCache.key(model.key, prefix);
+        if (timings == null) {
+            cached(key, x -> renderMethod(model, prefix, x), out);
         } else {
-            boolean hasAny = method.getParameters().stream()
-                .map(Element::asType)
-                .anyMatch(x -> !Helpers.isIrrelevant(x) && !Helpers.isKnown(x));
+            timings.method(model.javaName, () -> cached(key, x -> renderMethod(model, prefix, x), out));
+        }
 
-            if (!hasAny) {
-                doc.message(Diagnostic.Kind.WARNING, "Method uses @cc.tparam, but has no arbitrary arguments.", method);
-            }
-            signature = "";
+        event.end();
+        if (buffer == null) return;
+
+        builder.write(buffer.toString());
+        if (event.shouldCommit()) {
+            event.method = model.javaName;
+            event.luaName = prefix + model.info.name();
+            event.size = buffer.getBuffer().length();
+            event.commit();
         }
+    }
 
-        boolean hasAny = doc.hasReturn();
-        if (!hasAny && Helpers.isAny(method.getReturnType())) {
-            doc.message(Diagnostic.Kind.WARNING, "Method returns an arbitrary object but has no @cc.return tag.", method);
-        } else if (hasAny && Helpers.isKnown(method.getReturnType())) {
-            doc.message(Diagnostic.Kind.WARNING, "Method has a @cc.return but returns a known type.", method);
+    private void renderMethod(@Nonnull MethodModel model, @Nonnull String prefix, @Nonnull PrintWriter builder) {
+        MethodInfo info = model.info;
+
+        DocConverter doc = new DocConverter(env, model.doc);
+        checkMethod(model, doc);
+
+        builder.append("--[[- ");
+        doc.visit(model.doc.tree(), builder);
+        builder.append("\n");
+        builder.append(model.source);
+
+        if (!doc.hasParam()) {
+            for (ParameterModel parameter : model.parameters) argBuilder(builder, doc, parameter);
         }
 
         // If we've no explicit @cc.return annotation, then extract it from the @return tag.
-        if (!doc.hasReturn() && method.getReturnType().getKind() != TypeKind.VOID) {
-            builder.append("@treturn ");
-            type.visit(method.getReturnType(), builder);
-            if (isNullable(method)) builder.append("|nil");
-            builder.append(" ");
+        if (model.returns != null) {
+            builder.append("@treturn ").append(model.returns).append(" ");
             doc.visit(doc.getReturns(), builder);
             builder.append("\n");
         }
 
         builder.append("]]\n");
 
-        return new EmittedMethod(info, builder.toString(), signature);
+        builder.append("function ").append(prefix).append(info.name()).append("(").append(model.signature).append(") end\n");
+        for (String name : info.otherNames()) {
+            builder.append(prefix).append(name).append(" = ").append(prefix).append(info.name()).append("\n");
+        }
+    }
+
+    /**
+     * Report any problems with a method's signature, such as arguments or return values without a type.
+     * <p>
+     * This is shared by {@link #renderMethod(MethodModel, String, PrintWriter)} and
+     * {@link #checkUnrendered(MethodModel)}, and does not render anything.
+     *
+     * @param model The method to check.
+     * @param doc   The converter for this method's doc comment.
+     */
+    private void checkMethod(@Nonnull MethodModel model, @Nonnull DocConverter doc) {
+        ExecutableElement method = model.info.element();
+
+        if (model.isStatic && !model.isGeneric) {
+            env.message(Diagnostic.Kind.ERROR, "Cannot have static methods on non-generic sources", method);
+        }
+
+        if (!doc.hasParam()) {
+            for (ParameterModel parameter : model.parameters) {
+                if (parameter.irrelevant || !parameter.any) continue;
+                doc.message(Diagnostic.Kind.WARNING, "Method has a dynamic argument but has no @cc.param tag.", parameter.element);
+            }
+        } else if (!model.hasArbitraryParameters) {
+            doc.message(Diagnostic.Kind.WARNING, "Method uses @cc.tparam, but has no arbitrary arguments.", method);
+        }
+
+        boolean hasAny = doc.hasReturn();
+        if (!hasAny && model.returnsAny) {
+            doc.message(Diagnostic.Kind.WARNING, "Method returns an arbitrary object but has no @cc.return tag.", method);
+        } else if (hasAny && model.returnsKnown) {
+            doc.message(Diagnostic.Kind.WARNING, "Method has a @cc.return but returns a known type.", method);
+        }
+    }
+
+    /**
+     * Report every problem with a module, without rendering it.
+     * <p>
+     * This walks the doc comment with a {@link DocConverter} writing to a null writer, so reports the same problems as
+     * {@link #classHeader(ClassModel, PrintWriter)}.
+     *
+     * @param model The module to check.
+     */
+    private void checkUnrendered(@Nonnull ClassModel model) {
+        new DocConverter(env, model.doc).visit(model.doc.tree(), new PrintWriter(Writer.nullWriter()));
+    }
+
+    /**
+     * Report every problem with a method, without rendering it.
+     * <p>
+     * Like {@link #checkUnrendered(ClassModel)}, this walks the doc comment (along with any parameter and return
+     * descriptions which would be written) and checks the method's signature, so reports the same problems as
+     * {@link #renderMethod(MethodModel, String, PrintWriter)}.
+     *
+     * @param model The method to check.
+     */
+    private void checkUnrendered(@Nonnull MethodModel model) {
+        PrintWriter out = new PrintWriter(Writer.nullWriter());
+        DocConverter doc = new DocConverter(env, model.doc);
+        doc.visit(model.doc.tree(), out);
+        checkMethod(model, doc);
+
+        if (!doc.hasParam()) {
+            for (ParameterModel parameter : model.parameters) {
+                if (!parameter.irrelevant && !parameter.any) doc.visit(doc.getParams().get(parameter.name), out);
+            }
+        }
+        if (model.returns != null) doc.visit(doc.getReturns(), out);
     }
 
     private static boolean isNullable(ExecutableElement method) {
@@ -204,17 +502,11 @@ public class Emitter {
         ).anyMatch(x -> x.getAnnotationType().asElement().getSimpleName().contentEquals("Nullable"));
     }
 
-    @Nullable
-    private String argBuilder(StringBuilder builder, DocConverter docs, VariableElement element) {
-        TypeMirror type = element.asType();
-        if (Helpers.isIrrelevant(type)) return null;
-
-        if (Helpers.isAny(type)) {
-            docs.message(Diagnostic.Kind.WARNING, "Method has a dynamic argument but has no @cc.param tag.", element);
-            return "...";
-        }
+    private void argBuilder(PrintWriter builder, DocConverter docs, ParameterModel parameter) {
+        // Dynamic arguments have no type, and so are not documented. This is reported by checkMethod.
+        if (parameter.irrelevant || parameter.any) return;
 
-        String name = element.getSimpleName().toString();
+        String name = parameter.name;
         String prettyName;
         if (name.endsWith("A")) {
             prettyName = name.substring(0, name.length() - 1);
@@ -224,42 +516,499 @@ public class Emitter {
             prettyName = name;
         }
 
-        TypeMirror optional = Helpers.unwrapOptional(type);
-
         builder.append("@tparam");
-        if (optional != null) builder.append("[opt]");
+        if (parameter.optional) builder.append("[opt]");
         builder.append(" ");
 
-        new TypeConverter(env, element, this::resolveTypeName).visit(Helpers.unwrapCoerced(optional == null ? type : optional), builder);
+        builder.append(parameter.type);
         builder.append(" ").append(prettyName).append(" ");
         docs.visit(docs.getParams().get(name), builder);
         builder.append("\n");
-
-        return name;
     }
 
-    public void emit(@Nonnull File output) throws IOException {
+    /**
+     * Render every module and write it to the output directory.
+     * <p>
+     * Each module is streamed straight to its file, so we never hold more than one module (per thread) in memory.
+     *
+     * @param output        The directory to write to.
+     * @param onlyIfChanged Only write files whose contents have changed, and delete any which are no longer generated.
+     * @throws IOException If the files could not be written.
+     */
+    public void emit(@Nonnull File output, boolean onlyIfChanged) throws IOException {
         if (!output.exists() && !output.mkdirs()) throw new IOException("Cannot create output directory: " + output);
+        emit(new OutputSink.Directory(output.toPath(), onlyIfChanged));
+    }
 
-        for (Map.Entry<ClassInfo, String> module : typeBuilders.entrySet()) {
-            if (module.getKey().isHidden()) continue;
+    /**
+     * Render every module and write it to an {@link OutputSink}.
+     * <p>
+     * If writing to a directory with {@link OutputSink.Directory#onlyIfChanged()}, this also deletes any modules which a
+     * previous run generated, but which are no longer generated. This does not close the sink.
+     *
+     * @param sink The sink to write to.
+     * @throws IOException If the files could not be written.
+     */
+    public void emit(@Nonnull OutputSink sink) throws IOException {
+        emit(sink, null);
+    }
+
+    /**
+     * Render every module and write it to an {@link OutputSink}, also writing a copy of every file to another sink.
+     * <p>
+     * This is used to fill the {@link ResultCache} at the same time as writing the real output, without rendering
+     * everything twice or holding it all in memory.
+     *
+     * @param sink The sink to write to.
+     * @param copy The sink to also write each file to, or {@code null}.
+     * @throws IOException If the files could not be written.
+     * @see #emit(OutputSink)
+     */
+    public void emit(@Nonnull OutputSink sink, @Nullable OutputSink copy) throws IOException {
+        List<Written> written;
+        try {
+            written = render(classes, model -> writeModule(sink, copy, model));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
 
-            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(output, module.getKey().name() + ".lua")), StandardCharsets.UTF_8))) {
-                writer.write(module.getValue());
+        if (cache != null) {
+            env.message(Diagnostic.Kind.NOTE, String.format("Snippet cache: %d hits, %d misses.", cache.hits(), cache.misses()));
+        }
+
+        List<String> modules = classes.stream().map(x -> x.info.name()).collect(Collectors.toList());
+        finishOutput(
+            env, sink, modules, shard,
+            Collections.frequency(written, Written.CHANGED), Collections.frequency(written, Written.UNCHANGED)
+        );
+
+        reportUnwritten();
+    }
+
+    /**
+     * Compare the modules which would be generated against an existing output directory, without writing any files.
+     * <p>
+     * Each module is compared while it is rendered, so neither the old nor the new contents are held in memory. This
+     * reports every added, changed and removed module.
+     *
+     * @param directory The existing output directory.
+     * @return Whether any modules were added, changed or removed.
+     * @throws IOException If the existing files could not be read.
+     */
+    public boolean diff(@Nonnull File directory) throws IOException {
+        List<Change> changes;
+        try {
+            changes = render(classes, model -> diffModule(directory, model));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        List<String> modules = classes.stream().map(x -> x.info.name()).collect(Collectors.toList());
+        List<String> added = new ArrayList<>(), changed = new ArrayList<>();
+        for (int i = 0; i < modules.size(); i++) {
+            String name = modules.get(i);
+            switch (changes.get(i)) {
+                case ADDED -> added.add(name);
+                case CHANGED -> changed.add(name);
+                case UNCHANGED -> {
+                }
             }
         }
+        List<String> removed = extraModules(directory, modules, shard);
+
+        for (String name : added) env.message(Diagnostic.Kind.NOTE, "Added module " + name);
+        for (String name : changed) env.message(Diagnostic.Kind.NOTE, "Changed module " + name);
+        for (String name : removed) env.message(Diagnostic.Kind.NOTE, "Removed module " + name);
+        env.message(Diagnostic.Kind.NOTE, String.format(
+            "%d modules added, %d changed, %d removed.", added.size(), changed.size(), removed.size()
+        ));
+
+        reportUnwritten();
+        return !added.isEmpty() || !changed.isEmpty() || !removed.isEmpty();
+    }
+
+    private Change diffModule(File directory, ClassModel model) {
+        File file = new File(directory, model.info.name() + ".lua");
+        try {
+            ComparingOutputStream stream = new ComparingOutputStream(file.toPath());
+            try (stream) {
+                writeClass(model, stream, file.toString());
+            }
+
+            if (!stream.exists()) return Change.ADDED;
+            return stream.isChanged() ? Change.CHANGED : Change.UNCHANGED;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private enum Change {
+        ADDED,
+        CHANGED,
+        UNCHANGED,
+    }
+
+    /**
+     * Write this run's manifest, and when writing to a directory with {@link OutputSink.Directory#onlyIfChanged()},
+     * delete any modules which are no longer generated and report how many modules were written.
+     * <p>
+     * Only modules listed in a manifest from a previous run are deleted, so any other files in the output directory are
+     * left alone. Sharded runs always write a manifest. Otherwise, a hidden {@link Shard#UNSHARDED_MANIFEST} is only
+     * written with {@link OutputSink.Directory#onlyIfChanged()}.
+     *
+     * @param env       The environment to report to.
+     * @param sink      The sink which the modules were written to.
+     * @param modules   The names of every module which was written.
+     * @param shard     The current shard, or {@code null} if sharding is disabled.
+     * @param changed   The number of modules whose contents changed.
+     * @param unchanged The number of modules whose contents were the same.
+     * @throws IOException If the manifest could not be written or a stale module could not be deleted.
+     */
+    static void finishOutput(
+        Environment env, OutputSink sink, Collection<String> modules, @Nullable Shard shard, int changed, int unchanged
+    ) throws IOException {
+        if (!(sink instanceof OutputSink.Directory directory) || !directory.onlyIfChanged()) {
+            if (shard != null) shard.writeManifest(sink, modules);
+            return;
+        }
+
+        // Find the stale modules before writing our own manifest, as that replaces the previous one.
+        List<String> stale = staleModules(directory.directory(), modules, shard);
+        if (shard == null) {
+            Shard.writeUnshardedManifest(sink, modules);
+        } else {
+            shard.writeManifest(sink, modules);
+        }
+
+        int deleted = 0;
+        for (String name : stale) {
+            if (Files.deleteIfExists(directory.directory().resolve(name + ".lua"))) deleted++;
+        }
+
+        env.message(Diagnostic.Kind.NOTE, String.format(
+            "Wrote %d modules, skipped %d unchanged, deleted %d stale.", changed, unchanged, deleted
+        ));
+    }
+
+    /**
+     * Find modules which a previous run wrote to an output directory, but which we no longer generate.
+     * <p>
+     * Shards may share an output directory, so this only includes modules which would belong to this shard.
+     *
+     * @param directory The output directory.
+     * @param modules   The names of every module we generate.
+     * @param shard     The current shard, or {@code null} if sharding is disabled.
+     * @return The names of the stale modules, in sorted order.
+     * @throws IOException If a manifest could not be read.
+     */
+    static List<String> staleModules(Path directory, Collection<String> modules, @Nullable Shard shard) throws IOException {
+        Set<String> expected = new HashSet<>(modules);
+        Set<String> stale = new TreeSet<>();
+        List<Path> manifests;
+        try {
+            manifests = Shard.manifests(directory);
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+
+        for (Path manifest : manifests) {
+            for (String name : Shard.Manifest.read(manifest).modules()) {
+                if (!expected.contains(name) && (shard == null || shard.contains(name))) stale.add(name);
+            }
+        }
+
+        return new ArrayList<>(stale);
+    }
+
+    /**
+     * Find every module in a directory which we do not generate.
+     *
+     * @param directory The directory to search.
+     * @param modules   The names of every module we generate.
+     * @param shard     The current shard, or {@code null} if sharding is disabled.
+     * @return The names of the extra modules, in sorted order.
+     */
+    private static List<String> extraModules(File directory, Collection<String> modules, @Nullable Shard shard) {
+        Set<String> expected = new HashSet<>(modules);
+        String[] existing = directory.list((dir, name) -> name.endsWith(".lua"));
+        if (existing == null) return List.of();
+
+        return Arrays.stream(existing)
+            .map(name -> name.substring(0, name.length() - 4))
+            .filter(name -> !expected.contains(name) && (shard == null || shard.contains(name)))
+            .sorted()
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Check every module and method for problems, without rendering or writing any files.
+     * <p>
+     * Like {@link #emit(OutputSink)}, this checks hidden modules and methods which are never written too. Rather than
+     * rendering each module, every doc comment is walked with a {@link DocConverter} writing to a null writer (reporting
+     * any unsupported tags), and each method's signature is checked. Each method is only checked once, rather than once
+     * for every module it appears in.
+     * <p>
+     * When sharding, each shard checks its own modules, and the first shard checks methods without a written module.
+     */
+    public void check() {
+        // Every doc comment was resolved (reporting any broken references) when constructing the emitter.
+        for (ClassModel model : classes) checkUnrendered(model);
+        for (ClassModel model : hidden) checkUnrendered(model);
+        for (MethodModel model : reportedMethods(true)) checkUnrendered(model);
+
+        reportUnowned();
+    }
+
+    /**
+     * Check hidden modules and methods which are never written, and report how many were not rendered.
+     */
+    private void reportUnwritten() {
+        for (ClassModel model : hidden) checkUnrendered(model);
+        for (MethodModel model : reportedMethods(false)) checkUnrendered(model);
+        reportUnowned();
+
+        if (!hidden.isEmpty() || skippedMethods > 0) {
+            env.message(Diagnostic.Kind.NOTE, String.format(
+                "Skipped rendering %d hidden modules and %d methods which are never written.", hidden.size(), skippedMethods
+            ));
+        }
+    }
+
+    /**
+     * Get the methods whose problems are reported by this process, in the order they appear in the source.
+     *
+     * @param written Whether to include methods which appear in a module we write.
+     * @return The methods to report problems for.
+     */
+    private List<MethodModel> reportedMethods(boolean written) {
+        List<MethodModel> methods = new ArrayList<>();
+        for (MethodCollection collection : methodBuilders) {
+            if (collection.reportedHere && (written || !collection.writtenHere)) methods.addAll(collection.methods);
+        }
+        methods.sort(Comparator.<MethodModel, String>comparing(x -> x.location.file()).thenComparingLong(x -> x.position));
+        return methods;
+    }
+
+    private void reportUnowned() {
+        // Methods without an owner are never written, and so are not rendered. We still report them, but only once.
+        if (shard == null || shard.isFirst()) {
+            for (MethodCollection collection : methodBuilders) {
+                if (!collection.owners.isEmpty()) continue;
+                for (MethodInfo info : collection.infos) {
+                    env.message(Diagnostic.Kind.NOTE, "Cannot find owner for " + info.name(), info.element());
+                }
+            }
+        }
+    }
+
+    /**
+     * Write an index of every module and function generated by {@link #emit(File, boolean)}, so other tools can find
+     * them without parsing the generated Lua.
+     * <p>
+     * Modules are sorted by name, so the index is the same whatever order the sources were read in. For each module
+     * this lists its names, kind and source location. For each function in that module (including inherited ones) this
+     * lists its names, the Java method it was generated from (including its erased parameter types, so overloads can be
+     * told apart), and the inferred signature, parameter and return types. Types documented manually with
+     * {@code @cc.param} or {@code @cc.return} are omitted.
+     *
+     * @param path The file to write the index to.
+     * @throws IOException If the index could not be written.
+     */
+    public void writeSymbolIndex(@Nonnull Path path) throws IOException {
+        try (JsonWriter out = new JsonWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            out.beginObject().name("version").value(SYMBOL_INDEX_VERSION).name("modules").beginArray();
+            List<ClassModel> sorted = new ArrayList<>(classes);
+            sorted.sort(Comparator.comparing(x -> x.info.name()));
+            for (ClassModel model : sorted) {
+                ClassInfo info = model.info;
+
+                out.beginObject()
+                    .name("name").value(info.name())
+                    .name("module").value(info.moduleName())
+                    .name("type").value(info.typeName())
+                    .name("reference").value(info.referenceName())
+                    .name("kind").value(info.kind())
+                    .name("sort").value(info.sort().name().toLowerCase(Locale.ROOT))
+                    .name("java").value(model.javaName)
+                    .name("source").value(model.location.file() + ":" + model.location.line());
+
+                String prefix = prefix(info);
+                out.name("functions").beginArray();
+                for (MethodCollection collection : methodsOf(info)) {
+                    for (MethodModel method : collection.methods) writeSymbol(out, prefix, method);
+                }
+                out.endArray();
+
+                out.endObject();
+            }
+            out.endArray().endObject();
+        }
+    }
+
+    private static void writeSymbol(JsonWriter out, String prefix, MethodModel method) throws IOException {
+        out.beginObject()
+            .name("name").value(prefix + method.info.name());
+
+        out.name("aliases").beginArray();
+        for (String name : method.info.otherNames()) out.value(prefix + name);
+        out.endArray();
+
+        out.name("java").value(method.javaName)
+            .name("source").value(method.location.file() + ":" + method.location.line());
+
+        if (!method.doc.hasParam()) {
+            out.name("signature").value(method.signature);
+            out.name("parameters").beginArray();
+            for (ParameterModel parameter : method.parameters) {
+                if (parameter.irrelevant) continue;
+                out.beginObject()
+                    .name("name").value(parameter.name)
+                    .name("type").value(parameter.any ? "any" : parameter.type)
+                    .name("optional").value(parameter.optional)
+                    .endObject();
+            }
+            out.endArray();
+        }
+
+        if (method.returns != null) out.name("returns").value(method.returns);
+        out.endObject();
+    }
+
+    /**
+     * Render a single module to a writer. This is only used for benchmarking.
+     *
+     * @param name The name of the module to render.
+     * @param out  The writer to render to.
+     */
+    void renderModule(@Nonnull String name, @Nonnull PrintWriter out) {
+        ClassModel model = classes.stream().filter(x -> x.info.name().equals(name)).findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("No such module " + name));
+        classBuilder(model, out);
+    }
+
+    private Written writeModule(OutputSink sink, @Nullable OutputSink copy, ClassModel model) {
+        Events.FileWritten event = new Events.FileWritten();
+        event.begin();
+
+        String name = model.info.name() + ".lua";
+        try {
+            OutputStream stream = sink.open(name);
+            OutputStream copied = copy == null ? null : copy.open(name);
+            CountingOutputStream counted;
+            try (stream; copied) {
+                counted = event.isEnabled() ? new CountingOutputStream(stream) : null;
+                OutputStream out = counted == null ? stream : counted;
+                writeClass(model, copied == null ? out : new TeeOutputStream(out, copied), name);
+            }
+
+            Written written = stream instanceof IfChangedOutputStream changed && !changed.isChanged() ? Written.UNCHANGED : Written.CHANGED;
+
+            event.end();
+            if (counted != null && event.shouldCommit()) {
+                event.path = name;
+                event.size = counted.count;
+                event.changed = written == Written.CHANGED;
+                event.commit();
+            }
+
+            return written;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Render a module to a stream. This does not close the stream.
+     * <p>
+     * {@link PrintWriter} swallows any exceptions, including those thrown when closing the stream (such as
+     * {@link IfChangedOutputStream} failing to replace the file). Instead, the caller closes the stream itself, so
+     * such errors are propagated.
+     *
+     * @param model The module to render.
+     * @param out   The stream to write to.
+     * @param name  The name of the file, used in error messages.
+     * @throws IOException If the module could not be written.
+     */
+    private void writeClass(ClassModel model, OutputStream out, String name) throws IOException {
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        classBuilder(model, writer);
+        writer.flush();
+        if (writer.checkError()) throw new IOException("Cannot write " + name);
+    }
+
+    /**
+     * Writes to two streams at once. This does not close either stream.
+     */
+    private static final class TeeOutputStream extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        private TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private enum Written {
+        CHANGED,
+        UNCHANGED,
+    }
+
+    @Nonnull
+    private ResolvedDoc.Resolver resolver(@Nullable ClassInfo context) {
+        return resolvers.computeIfAbsent(context, k -> (x, q) -> resolveTermName(context, x, q));
     }
 
     @Nullable
     private String resolveTermName(@Nullable ClassInfo context, Element element, boolean qualified) {
         switch (element.getKind()) {
             case CLASS: {
-                ClassInfo type = types.get(MoreElements.asType(element));
-                return type == null ? null : type.referenceName();
+                TypeElement typeElement = MoreElements.asType(element);
+                ClassInfo type = types.get(typeElement);
+                return type == null ? resolveLinkedType(typeElement) : type.referenceName();
             }
 
             case METHOD: {
                 MethodInfo method = methods.get(MoreElements.asExecutable(element));
+                if (method == null) return resolveLinkedMethod(MoreElements.asExecutable(element), qualified);
 
                 // If this is an unqualified reference, then emit an unqualified reference.
                 if (!qualified) return method.name();
@@ -276,65 +1025,175 @@ public class Emitter {
 
     @Nullable
     private String resolveTypeName(DeclaredType element) {
-        ClassInfo type = types.get(MoreTypes.asTypeElement(element));
-        return type == null ? null : type.referenceName();
+        TypeElement typeElement = MoreTypes.asTypeElement(element);
+        ClassInfo type = types.get(typeElement);
+        return type == null ? resolveLinkedType(typeElement) : type.referenceName();
+    }
+
+    /**
+     * Get the name of a method, as written to the symbol index. This includes the erased parameter types, so that
+     * overloads have different names.
+     *
+     * @param method The method to get the name of.
+     * @return The method's name, of the form {@code package.Class#method(int,java.lang.String)}.
+     */
+    private String javaName(ExecutableElement method) {
+        StringJoiner name = new StringJoiner(",", ((TypeElement) method.getEnclosingElement()).getQualifiedName() + "#" + method.getSimpleName() + "(", ")");
+        for (VariableElement parameter : method.getParameters()) name.add(env.types().erasure(parameter.asType()).toString());
+        return name.toString();
     }
 
-    private long getPosition(Element element) {
-        DocTrees trees = env.trees();
-        CompilationUnitTree tree = trees.getPath(element).getCompilationUnit();
-        return trees.getSourcePositions().getStartPosition(tree, trees.getTree(element));
+    /**
+     * Resolve a class which is not part of this run using the {@link LinkIndex}.
+     *
+     * @param type The class to resolve.
+     * @return The module's reference name, or {@code null} if it is not a known module.
+     */
+    @Nullable
+    private String resolveLinkedType(TypeElement type) {
+        return links == null ? null : links.module(type.getQualifiedName().toString());
     }
 
-    private void writeSource(StringBuilder builder, Element element) {
-        CompilationUnitTree tree = env.trees().getPath(element).getCompilationUnit();
-        LineMap map = tree.getLineMap();
-        long position = getPosition(element);
+    /**
+     * Resolve a method which is not part of this run using the {@link LinkIndex}. Like {@link #resolveType(Element)},
+     * a qualified reference uses the first module found in its class or its superclasses.
+     *
+     * @param method    The method to resolve.
+     * @param qualified Whether to include the module name.
+     * @return The function's name, or {@code null} if it is not a known function.
+     */
+    @Nullable
+    private String resolveLinkedMethod(ExecutableElement method, boolean qualified) {
+        if (links == null) return null;
+
+        TypeElement owner = (TypeElement) method.getEnclosingElement();
+        String name = links.function(javaName(method));
+        if (name == null || !qualified) return name;
 
-        Path current = Paths.get(tree.getSourceFile().getName());
-        builder.append("@source ").append(root.relativize(current).toString().replace('\\', '/')).append(":")
-            .append(map.getLineNumber(position)).append("\n");
+        Element type = owner;
+        while (type != null && type.getKind() == ElementKind.CLASS) {
+            String module = resolveLinkedType((TypeElement) type);
+            if (module != null) return module + "." + name;
+            type = env.types().asElement(((TypeElement) type).getSuperclass());
+        }
+        return null;
     }
 
-    private static class EmittedMethod {
-        private final MethodInfo method;
-        private final String docComment;
-        private final String signature;
-        private boolean used = false;
+    /**
+     * Everything needed to render a {@link ClassInfo}, extracted from javac's model.
+     */
+    private static final class ClassModel {
+        private final ClassInfo info;
+        private final String javaName;
+        private final ResolvedDoc doc;
+        private final SourceLocation location;
+        private final String source;
+        private final String key;
 
-        EmittedMethod(MethodInfo method, String docComment, String signature) {
-            this.method = method;
-            this.docComment = docComment;
-            this.signature = signature;
+        private ClassModel(ClassInfo info, String javaName, ResolvedDoc doc, SourceLocation location, String key) {
+            this.info = info;
+            this.javaName = javaName;
+            this.doc = doc;
+            this.location = location;
+            this.source = location.sourceTag();
+            this.key = key;
         }
+    }
+
+    /**
+     * Everything needed to render a {@link MethodInfo}, extracted from javac's model.
+     */
+    private static final class MethodModel {
+        private final MethodInfo info;
+        private final String javaName;
+        private final boolean isStatic;
+        private final boolean isGeneric;
+        private final ResolvedDoc doc;
+        private final SourceLocation location;
+        private final String source;
+        private final long position;
+        private final List<ParameterModel> parameters;
+        private final String signature;
+        private final boolean hasArbitraryParameters;
+        private final String returns;
+        private final boolean returnsAny;
+        private final boolean returnsKnown;
+        private final String key;
 
-        boolean isUsed() {
-            return used;
+        private MethodModel(
+            MethodInfo info, String javaName, boolean isStatic, boolean isGeneric, ResolvedDoc doc, SourceLocation location,
+            List<ParameterModel> parameters, String signature, boolean hasArbitraryParameters,
+            String returns, boolean returnsAny, boolean returnsKnown, String key
+        ) {
+            this.info = info;
+            this.javaName = javaName;
+            this.isStatic = isStatic;
+            this.isGeneric = isGeneric;
+            this.doc = doc;
+            this.location = location;
+            this.source = location.sourceTag();
+            this.position = location.position();
+            this.parameters = parameters;
+            this.signature = signature;
+            this.hasArbitraryParameters = hasArbitraryParameters;
+            this.returns = returns;
+            this.returnsAny = returnsAny;
+            this.returnsKnown = returnsKnown;
+            this.key = key;
         }
+    }
 
-        void emit(String prefix, StringBuilder builder) {
-            used = true;
+    private static final class ParameterModel {
+        private final VariableElement element;
+        private final String name;
+        private final boolean irrelevant;
+        private final boolean any;
+        private final boolean optional;
+        private final String type;
 
-            builder.append(docComment);
-            builder.append("function ").append(prefix).append(method.name()).append("(").append(signature).append(") end\n");
-            for (String name : method.otherNames()) {
-                builder.append(prefix).append(name).append(" = ").append(prefix).append(method.name()).append("\n");
-            }
+        private ParameterModel(VariableElement element, boolean irrelevant, boolean any, boolean optional, String type) {
+            this.element = element;
+            this.name = element.getSimpleName().toString();
+            this.irrelevant = irrelevant;
+            this.any = any;
+            this.optional = optional;
+            this.type = type;
         }
     }
 
     private final class MethodCollection {
-        private final ClassInfo info;
+        private final ClassInfo primary;
         private final Element enclosing;
-        private final TypeMirror type;
+        private final String name;
         private final int depth;
-        private final List<EmittedMethod> methods;
+        private final Set<ClassInfo> owners;
+        private final List<MethodInfo> infos;
+        private final List<MethodModel> methods;
 
-        private MethodCollection(ClassInfo info, Element enclosing, List<EmittedMethod> methods) {
-            this.info = info;
+        /**
+         * Whether these methods appear in a module which this process writes.
+         */
+        private final boolean writtenHere;
+
+        /**
+         * Whether problems with these methods are reported by this process.
+         */
+        private final boolean reportedHere;
+
+        private MethodCollection(ClassInfo info, Element enclosing, List<MethodInfo> infos) {
             this.enclosing = enclosing;
-            this.type = enclosing.asType();
-            this.methods = methods;
+            this.infos = infos;
+            this.name = enclosing.getSimpleName().toString();
+
+            TypeElement type = (TypeElement) enclosing;
+            owners = types.values().stream()
+                .filter(klass -> info == klass || env.hierarchy().isSubtype(klass.element(), type))
+                .collect(Collectors.toUnmodifiableSet());
+
+            // Methods are rendered once for each module they appear in. We only report messages for one of those, so
+            // that they are not duplicated.
+            primary = isWritten(info) ? info : types.values().stream()
+                .filter(x -> owners.contains(x) && isWritten(x)).findFirst().orElse(null);
 
             int depth = 0;
             Element self = enclosing;
@@ -345,16 +1204,42 @@ public class Emitter {
                 depth++;
             }
             this.depth = depth;
-        }
 
-        boolean appearsIn(@Nonnull ClassInfo klass) {
-            return info == klass || env.types().isAssignable(klass.element().asType(), type);
+            // Like rendering, problems are only reported by the shard which owns the primary module. Methods which are
+            // never written are reported (and counted) by the first shard.
+            writtenHere = owners.stream().anyMatch(Emitter.this::isWrittenHere);
+            reportedHere = primary == null ? shard == null || shard.isFirst() : inShard(primary);
+
+            // We only need the methods which appear in one of the modules we write, or whose problems we report.
+            if (!writtenHere && !reportedHere) {
+                methods = List.of();
+                return;
+            }
+            if (!writtenHere) skippedMethods += infos.size();
+
+            List<MethodModel> models = new ArrayList<>();
+            Runnable build = () -> {
+                for (MethodInfo method : infos) models.add(methodModel(info, method));
+            };
+            if (reportedHere) {
+                build.run();
+            } else {
+                env.quietly(build);
+            }
+
+            // Methods are sorted by their position within the file.
+            models.sort(Comparator.comparingLong(x -> x.position));
+            methods = models;
         }
 
-        void emit(String prefix, StringBuilder builder) {
-            for (EmittedMethod method : methods) {
+        void emit(ClassInfo module, String prefix, PrintWriter builder) {
+            for (MethodModel method : methods) {
                 builder.append("\n");
-                method.emit(prefix, builder);
+                if (module == primary) {
+                    methodBuilder(method, prefix, builder);
+                } else {
+                    env.quietly(() -> methodBuilder(method, prefix, builder));
+                }
             }
         }
     }
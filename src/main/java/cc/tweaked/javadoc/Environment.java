@@ -7,48 +7,77 @@
 package cc.tweaked.javadoc;
 
 import com.sun.source.doctree.DocTree;
+import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.util.DocTreePath;
 import com.sun.source.util.DocTrees;
-import jdk.javadoc.doclet.DocletEnvironment;
-import jdk.javadoc.doclet.Reporter;
+import com.sun.source.util.TreePath;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
-import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Supplier;
 
 public final class Environment {
     public static final String LUA_FUNCTION = "dan200.computercraft.api.lua.LuaFunction";
     public static final String GENERIC_PERIPHERAL = "dan200.computercraft.api.lua.GenericSource";
 
-    private final DocletEnvironment env;
-    private final Reporter reporter;
+    private final Elements elements;
+    private final Types types;
+    private final DocTrees trees;
+    private final MsgReporter reporter;
+    private final Path root;
+    private final ThreadLocal<List<Runnable>> buffer = new ThreadLocal<>();
+    private int problems = 0;
+
+    private final TypeHierarchy hierarchy = new TypeHierarchy();
+    private final OverrideIndex overrides = new OverrideIndex(this);
+    private final ReferenceCache references = new ReferenceCache();
+    private final Map<Element, SourceLocation> locations = new HashMap<>();
+    private final Map<CompilationUnitTree, String> files = new HashMap<>();
+    private final Set<TypeElement> dependencies = new HashSet<>();
 
     private final TypeElement luaFunction;
-    private final TypeMirror luaApiType;
-    private final TypeMirror peripheralType;
-    private final TypeMirror genericPeripheralType;
+    private final TypeElement luaApiType;
+    private final TypeElement peripheralType;
+    private final TypeElement genericPeripheralType;
 
-    private Environment(DocletEnvironment env, Reporter reporter) {
-        this.env = env;
+    private Environment(Elements elements, Types types, DocTrees trees, MsgReporter reporter, Path root) {
+        this.elements = elements;
+        this.types = types;
+        this.trees = trees;
         this.reporter = reporter;
+        this.root = root.toAbsolutePath();
 
-        Elements elements = env.getElementUtils();
         luaFunction = elements.getTypeElement(LUA_FUNCTION);
-        luaApiType = asType(findTypeElement("dan200.computercraft.api.lua.ILuaAPI", "dan200.computercraft.api.lua.LuaAPI"));
-        peripheralType = asType(findTypeElement("dan200.computercraft.api.peripheral.IPeripheral", "dan200.computercraft.api.peripheral.Peripheral"));
-        genericPeripheralType = asType(elements.getTypeElement(GENERIC_PERIPHERAL));
+        luaApiType = findTypeElement("dan200.computercraft.api.lua.ILuaAPI", "dan200.computercraft.api.lua.LuaAPI");
+        peripheralType = findTypeElement("dan200.computercraft.api.peripheral.IPeripheral", "dan200.computercraft.api.peripheral.Peripheral");
+        genericPeripheralType = elements.getTypeElement(GENERIC_PERIPHERAL);
     }
 
-    public static Environment of(DocletEnvironment environment, Reporter reporter) {
-        Environment env = new Environment(environment, reporter);
+    /**
+     * Construct a new environment.
+     *
+     * @param elements The element utilities for the current compilation.
+     * @param types    The type utilities for the current compilation.
+     * @param trees    The doc tree utilities for the current compilation.
+     * @param reporter The reporter to print diagnostics with.
+     * @param root     The directory that {@code @source} paths are relative to.
+     * @return The new environment, or {@code null} if the CC: Tweaked API could not be found.
+     */
+    @Nullable
+    public static Environment of(@Nonnull Elements elements, @Nonnull Types types, @Nonnull DocTrees trees, @Nonnull MsgReporter reporter, @Nonnull Path root) {
+        Environment env = new Environment(elements, types, trees, reporter, root);
         if (env.luaFunction == null) {
             env.message(Diagnostic.Kind.ERROR, "Cannot find @LuaFunction");
             return null;
@@ -69,33 +98,161 @@ public final class Environment {
 
     @Nonnull
     public Elements elements() {
-        return env.getElementUtils();
+        return elements;
     }
 
     @Nonnull
     public Types types() {
-        return env.getTypeUtils();
+        return types;
     }
 
     @Nonnull
     public DocTrees trees() {
-        return env.getDocTrees();
+        return trees;
+    }
+
+    @Nonnull
+    public TypeHierarchy hierarchy() {
+        return hierarchy;
+    }
+
+    @Nonnull
+    public OverrideIndex overrides() {
+        return overrides;
+    }
+
+    @Nonnull
+    public ReferenceCache references() {
+        return references;
+    }
+
+    /**
+     * Get where an element is defined. This is computed once per element and then cached.
+     * <p>
+     * As this looks up javac's model, it must only be called from the doclet's thread.
+     *
+     * @param element The element to look up.
+     * @return The element's location.
+     */
+    @Nonnull
+    public SourceLocation location(@Nonnull Element element) {
+        SourceLocation location = locations.get(element);
+        if (location != null) return location;
+
+        depend(element);
+
+        DocTrees trees = trees();
+        TreePath path = trees.getPath(element);
+        CompilationUnitTree unit = path.getCompilationUnit();
+        long position = trees.getSourcePositions().getStartPosition(unit, path.getLeaf());
+        String file = files.computeIfAbsent(unit, x ->
+            root.relativize(Paths.get(x.getSourceFile().getName()).toAbsolutePath()).toString().replace('\\', '/')
+        );
+
+        location = new SourceLocation(path, position, unit.getLineMap().getLineNumber(position), file);
+        locations.put(element, location);
+        return location;
     }
 
-    public Reporter reporter() {
-        return reporter;
+    /**
+     * Record that the generated documentation depends on an element, for instance because we read its doc comment or
+     * it is the target of a reference. This is used by {@link ResultCache} to find every class a run read.
+     * <p>
+     * Only the element's outermost class is recorded. Like {@link #location(Element)}, this must only be called from
+     * the doclet's thread.
+     *
+     * @param element The element we depend on.
+     */
+    public void depend(@Nonnull Element element) {
+        Element outermost = element;
+        while (outermost.getEnclosingElement() != null && !(outermost.getEnclosingElement() instanceof PackageElement)) {
+            outermost = outermost.getEnclosingElement();
+        }
+        if (outermost instanceof TypeElement type) dependencies.add(type);
+    }
+
+    /**
+     * Every class recorded with {@link #depend(Element)}.
+     *
+     * @return The classes this run depends on.
+     */
+    @Nonnull
+    public Set<TypeElement> dependencies() {
+        return Collections.unmodifiableSet(dependencies);
     }
 
     public void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message) {
-        reporter.print(kind, message);
+        report(kind, () -> reporter.message(kind, message, (Element) null));
     }
 
     public void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message, @Nonnull Element element) {
-        reporter.print(kind, element, message);
+        report(kind, () -> reporter.message(kind, message, element));
     }
 
     public void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message, @Nonnull Element element, @NonNull DocTree tree) {
-        reporter.print(kind, DocTreePath.getPath(trees().getPath(element), trees().getDocCommentTree(element), tree), message);
+        report(kind, () -> reporter.message(kind, message, DocTreePath.getPath(location(element).path(), trees().getDocCommentTree(element), tree)));
+    }
+
+    /**
+     * Report a diagnostic of a given kind, counting it towards {@link #problems()} if it is an error or warning.
+     *
+     * @param kind    The kind of diagnostic.
+     * @param message The function which prints this message.
+     * @see #report(Runnable)
+     */
+    public void report(@Nonnull Diagnostic.Kind kind, @Nonnull Runnable message) {
+        boolean problem = kind == Diagnostic.Kind.ERROR || kind == Diagnostic.Kind.WARNING || kind == Diagnostic.Kind.MANDATORY_WARNING;
+        report(problem ? () -> {
+            problems++;
+            message.run();
+        } : message);
+    }
+
+    /**
+     * The number of errors and warnings printed so far. Messages which were discarded (such as with
+     * {@link #quietly(Runnable)}) are not counted.
+     *
+     * @return The number of problems reported.
+     */
+    public int problems() {
+        return problems;
+    }
+
+    /**
+     * Report a diagnostic. If messages are currently being {@linkplain #buffered(Supplier) buffered}, this is delayed
+     * until the buffer is replayed.
+     *
+     * @param message The function which prints this message.
+     */
+    public void report(@Nonnull Runnable message) {
+        List<Runnable> messages = buffer.get();
+        if (messages == null) {
+            message.run();
+        } else {
+            messages.add(message);
+        }
+    }
+
+    /**
+     * Run a function, buffering any messages it reports rather than printing them immediately.
+     * <p>
+     * Neither javac nor the reporter are thread-safe, so this allows running code on other threads, and then printing
+     * its messages on the main thread with {@link Buffered#get()}.
+     *
+     * @param function The function to run.
+     * @param <T>      The result of this function.
+     * @return The function's result and any messages it reported.
+     */
+    @Nonnull
+    public <T> Buffered<T> buffered(@Nonnull Supplier<T> function) {
+        List<Runnable> previous = buffer.get();
+        List<Runnable> messages = new ArrayList<>();
+        buffer.set(messages);
+        try {
+            return new Buffered<>(function.get(), messages);
+        } finally {
+            buffer.set(previous);
+        }
     }
 
     @Nonnull
@@ -104,17 +261,17 @@ public final class Environment {
     }
 
     @Nonnull
-    public TypeMirror getLuaApiType() {
+    public TypeElement getLuaApiType() {
         return luaApiType;
     }
 
     @Nonnull
-    public TypeMirror getPeripheralType() {
+    public TypeElement getPeripheralType() {
         return peripheralType;
     }
 
-    @Nonnull
-    public TypeMirror getGenericPeripheralType() {
+    @Nullable
+    public TypeElement getGenericPeripheralType() {
         return genericPeripheralType;
     }
 
@@ -132,7 +289,6 @@ public final class Environment {
     }
 
     private @Nullable TypeElement findTypeElement(String... names) {
-        Elements elements = env.getElementUtils();
         for (String name : names) {
             TypeElement element = elements.getTypeElement(name);
             if (element != null) return element;
@@ -141,11 +297,54 @@ public final class Environment {
         return null;
     }
 
-    private static TypeMirror asType(TypeElement element) {
-        return element == null ? null : element.asType();
+    /**
+     * Run a function, discarding any messages it reports.
+     *
+     * @param function The function to run.
+     */
+    public void quietly(@Nonnull Runnable function) {
+        buffered(() -> {
+            function.run();
+            return null;
+        });
     }
 
-    private interface MsgReporter {
+    public final class Buffered<T> {
+        private final T value;
+        private final List<Runnable> messages;
+
+        private Buffered(T value, List<Runnable> messages) {
+            this.value = value;
+            this.messages = messages;
+        }
+
+        /**
+         * Whether any messages were reported while running this function.
+         *
+         * @return If any messages were reported.
+         */
+        public boolean hasMessages() {
+            return !messages.isEmpty();
+        }
+
+        /**
+         * Report all buffered messages and return the result.
+         *
+         * @return The result of the buffered function.
+         */
+        public T get() {
+            for (Runnable message : messages) report(message);
+            return value;
+        }
+    }
+
+    /**
+     * Prints diagnostics, either through javadoc's {@link jdk.javadoc.doclet.Reporter} or javac's
+     * {@link javax.annotation.processing.Messager}.
+     */
+    public interface MsgReporter {
         void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message, @Nullable Element element);
+
+        void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message, @Nonnull DocTreePath path);
     }
 }
@@ -0,0 +1,104 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import jdk.jfr.*;
+
+/**
+ * Java Flight Recorder events for profiling documentation generation.
+ * <p>
+ * These are disabled unless a recording is running (for instance, with {@code -J-XX:StartFlightRecording}). Event
+ * fields should only be filled in once {@link Event#shouldCommit()} returns true, so that disabled events cost nothing
+ * beyond their allocation, which the JIT will generally remove.
+ */
+public final class Events {
+    private static final String CATEGORY = "CC: Tweaked Javadoc";
+
+    private Events() {
+    }
+
+    @Name("cc.tweaked.javadoc.ClassRendered")
+    @Label("Module Rendered")
+    @Description("A module or type was rendered, including all of its methods.")
+    @Category(CATEGORY)
+    public static final class ClassRendered extends Event {
+        @Label("Module")
+        String module;
+
+        @Label("Class")
+        String className;
+
+        @Label("Methods")
+        @Description("The number of methods rendered in this module.")
+        int methods;
+    }
+
+    @Name("cc.tweaked.javadoc.MethodRendered")
+    @Label("Method Rendered")
+    @Description("A method was rendered as part of a module.")
+    @Category(CATEGORY)
+    public static final class MethodRendered extends Event {
+        @Label("Method")
+        String method;
+
+        @Label("Lua Name")
+        String luaName;
+
+        @Label("Size")
+        @DataAmount(DataAmount.BYTES)
+        @Description("The number of characters rendered.")
+        long size;
+    }
+
+    @Name("cc.tweaked.javadoc.ReferenceResolved")
+    @Label("Reference Resolved")
+    @Description("A {@link} or {@see} reference in a doc comment was converted to a Lua name.")
+    @Category(CATEGORY)
+    public static final class ReferenceResolved extends Event {
+        @Label("Owner")
+        @Description("The element whose doc comment contains this reference.")
+        String owner;
+
+        @Label("Signature")
+        String signature;
+
+        @Label("Lua Name")
+        @Description("The Lua name of the reference, or null if it could not be resolved.")
+        String luaName;
+    }
+
+    @Name("cc.tweaked.javadoc.InheritDocResolved")
+    @Label("Inherited Doc Resolved")
+    @Description("The doc comment used by {@inheritDoc} was resolved.")
+    @Category(CATEGORY)
+    public static final class InheritDocResolved extends Event {
+        @Label("Method")
+        String method;
+
+        @Label("Parent")
+        @Description("The overridden method, or null if none had a doc comment.")
+        String parent;
+    }
+
+    @Name("cc.tweaked.javadoc.FileWritten")
+    @Label("File Written")
+    @Description("A module was rendered and written to the output.")
+    @Category(CATEGORY)
+    public static final class FileWritten extends Event {
+        @Label("Path")
+        @Description("The name of the file, relative to the output.")
+        String path;
+
+        @Label("Size")
+        @DataAmount(DataAmount.BYTES)
+        long size;
+
+        @Label("Changed")
+        @Description("Whether the file's contents changed. This is always true without -write-if-changed.")
+        boolean changed;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.annotation.Nonnull;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * An output stream which compares its contents against an existing file as it is written, and only writes to disk once
+ * the two differ.
+ * <p>
+ * If the contents are identical, the file is left untouched (including its modification time). Otherwise the new
+ * contents are written to a temporary file, which replaces the original when this stream is closed.
+ */
+public final class IfChangedOutputStream extends OutputStream {
+    private final Path target;
+
+    private InputStream existing;
+    private long matched = 0;
+    private byte[] scratch = new byte[0];
+
+    private Path temporary;
+    private OutputStream out;
+    private boolean closed = false;
+
+    public IfChangedOutputStream(@Nonnull Path target) throws IOException {
+        this.target = target;
+        existing = Files.exists(target) ? new BufferedInputStream(Files.newInputStream(target)) : null;
+    }
+
+    /**
+     * Whether the file was changed. This is only valid once the stream has been closed.
+     *
+     * @return Whether the file's contents differed.
+     */
+    public boolean isChanged() {
+        return out != null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (out == null) {
+            if (existing != null && existing.read() == (b & 0xFF)) {
+                matched++;
+                return;
+            }
+            diverge();
+        }
+
+        out.write(b);
+    }
+
+    @Override
+    public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+        if (out == null) {
+            int matching = matching(b, off, len);
+            matched += matching;
+            if (matching == len) return;
+
+            off += matching;
+            len -= matching;
+            diverge();
+        }
+
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+
+        // If everything matched so far, the existing file must also have no more data.
+        if (out == null) {
+            if (existing != null && existing.read() < 0) {
+                existing.close();
+                return;
+            }
+            diverge();
+        }
+
+        out.close();
+        if (temporary != null) Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private int matching(byte[] b, int off, int len) throws IOException {
+        if (existing == null) return 0;
+
+        if (scratch.length < len) scratch = new byte[len];
+        int read = existing.readNBytes(scratch, 0, len);
+        int mismatch = Arrays.mismatch(b, off, off + len, scratch, 0, read);
+        return mismatch < 0 ? len : mismatch;
+    }
+
+    /**
+     * Switch to writing the new file, copying across the prefix which we have already compared.
+     *
+     * @throws IOException If the file could not be opened.
+     */
+    private void diverge() throws IOException {
+        if (existing == null) {
+            out = new BufferedOutputStream(Files.newOutputStream(target));
+            return;
+        }
+
+        existing.close();
+        existing = null;
+
+        temporary = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        out = new BufferedOutputStream(Files.newOutputStream(temporary));
+        try (InputStream original = Files.newInputStream(target)) {
+            long remaining = matched;
+            byte[] buffer = new byte[8192];
+            while (remaining > 0) {
+                int read = original.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) throw new EOFException("File " + target + " changed while being compared");
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal JSON parser, used to read the files written by {@link JsonWriter}.
+ * <p>
+ * Objects are read as {@link Map}s, arrays as {@link List}s, and numbers as {@link Long}s or {@link Double}s.
+ */
+public final class JsonReader {
+    private final String input;
+    private int pos = 0;
+
+    private JsonReader(String input) {
+        this.input = input;
+    }
+
+    /**
+     * Parse a JSON document.
+     *
+     * @param input The document to parse.
+     * @return The parsed value.
+     * @throws IOException If the document is not valid JSON.
+     */
+    @Nullable
+    public static Object parse(@Nonnull String input) throws IOException {
+        JsonReader reader = new JsonReader(input);
+        Object value = reader.value();
+        reader.skipWhitespace();
+        if (reader.pos < input.length()) throw reader.error("Unexpected trailing characters");
+        return value;
+    }
+
+    private Object value() throws IOException {
+        skipWhitespace();
+        if (pos >= input.length()) throw error("Unexpected end of input");
+
+        char c = input.charAt(pos);
+        switch (c) {
+            case '{':
+                return object();
+            case '[':
+                return array();
+            case '"':
+                return string();
+            case 't':
+                return literal("true", true);
+            case 'f':
+                return literal("false", false);
+            case 'n':
+                return literal("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) return number();
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> object() throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        pos++;
+        skipWhitespace();
+        if (consume('}')) return result;
+
+        do {
+            skipWhitespace();
+            if (pos >= input.length() || input.charAt(pos) != '"') throw error("Expected a key");
+            String key = string();
+            skipWhitespace();
+            if (!consume(':')) throw error("Expected ':'");
+            result.put(key, value());
+            skipWhitespace();
+        } while (consume(','));
+
+        if (!consume('}')) throw error("Expected ',' or '}'");
+        return result;
+    }
+
+    private List<Object> array() throws IOException {
+        List<Object> result = new ArrayList<>();
+        pos++;
+        skipWhitespace();
+        if (consume(']')) return result;
+
+        do {
+            result.add(value());
+            skipWhitespace();
+        } while (consume(','));
+
+        if (!consume(']')) throw error("Expected ',' or ']'");
+        return result;
+    }
+
+    private String string() throws IOException {
+        pos++;
+        StringBuilder result = new StringBuilder();
+        while (true) {
+            if (pos >= input.length()) throw error("Unterminated string");
+            char c = input.charAt(pos++);
+            if (c == '"') return result.toString();
+            if (c != '\\') {
+                result.append(c);
+                continue;
+            }
+
+            if (pos >= input.length()) throw error("Unterminated string");
+            char escape = input.charAt(pos++);
+            switch (escape) {
+                case '"', '\\', '/' -> result.append(escape);
+                case 'b' -> result.append('\b');
+                case 'f' -> result.append('\f');
+                case 'n' -> result.append('\n');
+                case 'r' -> result.append('\r');
+                case 't' -> result.append('\t');
+                case 'u' -> {
+                    if (pos + 4 > input.length()) throw error("Invalid unicode escape");
+                    try {
+                        result.append((char) Integer.parseInt(input.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid unicode escape");
+                    }
+                    pos += 4;
+                }
+                default -> throw error("Invalid escape '\\" + escape + "'");
+            }
+        }
+    }
+
+    private Object number() throws IOException {
+        int start = pos;
+        boolean integer = true;
+        while (pos < input.length()) {
+            char c = input.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E') {
+                integer = false;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            pos++;
+        }
+
+        String number = input.substring(start, pos);
+        try {
+            return integer ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number " + number);
+        }
+    }
+
+    private Object literal(String literal, Object value) throws IOException {
+        if (!input.startsWith(literal, pos)) throw error("Expected " + literal);
+        pos += literal.length();
+        return value;
+    }
+
+    private boolean consume(char c) {
+        if (pos < input.length() && input.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (pos < input.length() && Character.isWhitespace(input.charAt(pos))) pos++;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at offset " + pos);
+    }
+}
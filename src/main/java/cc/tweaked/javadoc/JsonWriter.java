@@ -0,0 +1,147 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A minimal streaming JSON writer, used for our machine-readable reports.
+ * <p>
+ * This does no validation: callers are expected to balance {@link #beginObject()}/{@link #endObject()} and to only
+ * call {@link #name(String)} inside objects.
+ */
+public final class JsonWriter implements Closeable {
+    private final Writer out;
+
+    /**
+     * For each open object or array, whether it is still empty.
+     */
+    private final Deque<Boolean> empty = new ArrayDeque<>();
+    private boolean afterName = false;
+
+    public JsonWriter(@Nonnull Writer out) {
+        this.out = out;
+    }
+
+    @Nonnull
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    @Nonnull
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    @Nonnull
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    @Nonnull
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    @Nonnull
+    public JsonWriter name(@Nonnull String name) throws IOException {
+        separator();
+        string(name);
+        out.write(": ");
+        afterName = true;
+        return this;
+    }
+
+    @Nonnull
+    public JsonWriter value(@Nullable String value) throws IOException {
+        separator();
+        if (value == null) {
+            out.write("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    @Nonnull
+    public JsonWriter value(long value) throws IOException {
+        separator();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    @Nonnull
+    public JsonWriter value(boolean value) throws IOException {
+        separator();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.write('\n');
+        out.close();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        separator();
+        out.write(bracket);
+        empty.push(true);
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (!empty.pop()) newline();
+        out.write(bracket);
+        return this;
+    }
+
+    private void separator() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+
+        if (empty.isEmpty()) return;
+        if (!empty.pop()) out.write(',');
+        empty.push(false);
+        newline();
+    }
+
+    private void newline() throws IOException {
+        out.write('\n');
+        for (int i = 0; i < empty.size(); i++) out.write("  ");
+    }
+
+    private void string(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+                }
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Modules and functions from other projects, read from the symbol indexes they wrote with {@code -symbol-index}.
+ * <p>
+ * This allows resolving references to classes which are not part of the current run (for instance, those only
+ * available as compiled classes on the classpath), without needing their sources on the sourcepath.
+ */
+public final class LinkIndex {
+    private final Map<String, String> modules = new HashMap<>();
+    private final Map<String, String> functions = new HashMap<>();
+
+    private LinkIndex() {
+    }
+
+    /**
+     * Read one or more symbol indexes written by {@link Emitter#writeSymbolIndex(Path)}.
+     *
+     * @param paths The indexes to read. If a class appears in several indexes, the first one wins.
+     * @return The combined index.
+     * @throws IOException If an index could not be read or is malformed.
+     */
+    @Nonnull
+    public static LinkIndex read(@Nonnull Collection<Path> paths) throws IOException {
+        LinkIndex index = new LinkIndex();
+        for (Path path : paths) {
+            try {
+                index.add(JsonReader.parse(Files.readString(path, StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                throw new IOException("Cannot read symbol index " + path + ": " + e.getMessage(), e);
+            }
+        }
+        return index;
+    }
+
+    private void add(@Nullable Object root) throws IOException {
+        Map<?, ?> index = cast(root, Map.class, "index");
+        Object version = index.get("version");
+        if (!Long.valueOf(Emitter.SYMBOL_INDEX_VERSION).equals(version)) throw new IOException("Unsupported version " + version);
+
+        for (Object moduleObj : get(index, "modules", List.class)) {
+            Map<?, ?> module = cast(moduleObj, Map.class, "module");
+            modules.putIfAbsent(get(module, "java", String.class), get(module, "reference", String.class));
+
+            // Function names include the module's type prefix, which we strip to get the method's own name.
+            String type = (String) module.get("type");
+            int prefix = type == null ? 0 : type.length() + 1;
+            for (Object functionObj : get(module, "functions", List.class)) {
+                Map<?, ?> function = cast(functionObj, Map.class, "function");
+                String name = get(function, "name", String.class);
+                if (name.length() <= prefix) throw new IOException("Function " + name + " is missing its module prefix");
+                functions.putIfAbsent(get(function, "java", String.class), name.substring(prefix));
+            }
+        }
+    }
+
+    private static <T> T get(Map<?, ?> object, String key, Class<T> klass) throws IOException {
+        return cast(object.get(key), klass, "\"" + key + "\"");
+    }
+
+    private static <T> T cast(@Nullable Object value, Class<T> klass, String name) throws IOException {
+        if (!klass.isInstance(value)) throw new IOException("Expected " + name + " to be a " + klass.getSimpleName());
+        return klass.cast(value);
+    }
+
+    /**
+     * Find the reference name of a module.
+     *
+     * @param className The qualified name of the module's class.
+     * @return The module's {@link ClassInfo#referenceName()}, or {@code null} if it is not in this index.
+     */
+    @Nullable
+    public String module(@Nonnull String className) {
+        return modules.get(className);
+    }
+
+    /**
+     * Find the name of a function.
+     *
+     * @param methodName The function's Java name, of the form {@code package.Class#method(int,java.lang.String)}.
+     * @return The function's {@link MethodInfo#name()}, without any module prefix, or {@code null} if it is not in
+     * this index.
+     */
+    @Nullable
+    public String function(@Nonnull String methodName) {
+        return functions.get(methodName);
+    }
+}
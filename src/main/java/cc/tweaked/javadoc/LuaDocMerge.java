@@ -0,0 +1,134 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Combines the output of several shards (generated with {@code -shard i/N}) into a single directory, containing the
+ * same files as generating every module in one process.
+ * <p>
+ * This reads the manifest written by each shard, checks that every shard is present exactly once, and then copies each
+ * shard's modules into the output directory. Like {@code -write-if-changed}, unchanged files are left untouched, and
+ * modules which a previous merge wrote but which are not part of any shard are deleted. The shards' manifests are
+ * copied alongside the modules, so the next merge knows which files it generated.
+ * <p>
+ * Usage: {@code LuaDocMerge OUTPUT_DIR SHARD_DIR...}. A shard directory may contain several shards' output.
+ */
+public final class LuaDocMerge {
+    private LuaDocMerge() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: LuaDocMerge OUTPUT_DIR SHARD_DIR...");
+            System.exit(1);
+            return;
+        }
+
+        List<Path> shards = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) shards.add(Path.of(args[i]));
+
+        try {
+            merge(Path.of(args[0]), shards);
+        } catch (IOException e) {
+            System.err.println("Cannot merge shards: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Merge several shards into one output directory.
+     *
+     * @param output The directory to write to.
+     * @param shards The directories containing each shard's output.
+     * @throws IOException If the shards are incomplete or could not be copied.
+     */
+    public static void merge(Path output, List<Path> shards) throws IOException {
+        // Find every module, checking that we have each shard exactly once.
+        Map<String, Path> modules = new TreeMap<>();
+        Map<Integer, Path> seen = new HashMap<>();
+        int count = -1;
+        for (Path directory : shards) {
+            try (DirectoryStream<Path> manifests = Files.newDirectoryStream(directory, Shard.MANIFEST_GLOB)) {
+                for (Path path : manifests) {
+                    Shard.Manifest manifest = Shard.Manifest.read(path);
+                    Shard shard = manifest.shard();
+
+                    if (count < 0) {
+                        count = shard.count();
+                    } else if (count != shard.count()) {
+                        throw new IOException(path + " is one of " + shard.count() + " shards, but expected " + count);
+                    }
+
+                    Path previous = seen.put(shard.index(), path);
+                    if (previous != null) throw new IOException("Shard " + shard.index() + " found in both " + previous + " and " + path);
+
+                    for (String module : manifest.modules()) {
+                        Path file = directory.resolve(module + ".lua");
+                        Path existing = modules.put(module, file);
+                        if (existing != null) throw new IOException("Module " + module + " found in both " + existing + " and " + file);
+                    }
+                }
+            }
+        }
+
+        if (count < 0) throw new IOException("No shard manifests found");
+        for (int i = 1; i <= count; i++) {
+            if (!seen.containsKey(i)) throw new IOException("Missing shard " + i + "/" + count);
+        }
+
+        // Only delete modules listed in the output's existing manifests, so we never remove files we did not write.
+        Files.createDirectories(output);
+        List<String> stale = Emitter.staleModules(output, modules.keySet(), null);
+        boolean shared = false;
+        for (Path directory : shards) shared |= Files.isSameFile(directory, output);
+
+        int written = 0, unchanged = 0, deleted = 0;
+        for (Map.Entry<String, Path> module : modules.entrySet()) {
+            Path target = output.resolve(module.getKey() + ".lua");
+            if (Files.isSameFile(module.getValue().getParent(), output)) {
+                unchanged++;
+                continue;
+            }
+
+            IfChangedOutputStream stream = new IfChangedOutputStream(target);
+            try (stream) {
+                Files.copy(module.getValue(), stream);
+            }
+
+            if (stream.isChanged()) {
+                written++;
+            } else {
+                unchanged++;
+            }
+        }
+
+        // If the output directory is also one of the shards, it already has (some of) the manifests. Otherwise replace
+        // any previous manifests with the current ones.
+        if (!shared) {
+            for (Path manifest : Shard.manifests(output)) Files.delete(manifest);
+            for (Path manifest : seen.values()) {
+                Files.copy(manifest, output.resolve(manifest.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        for (String module : stale) {
+            if (Files.deleteIfExists(output.resolve(module + ".lua"))) deleted++;
+        }
+
+        System.out.printf(
+            "Merged %d modules from %d shards: wrote %d, skipped %d unchanged, deleted %d stale.%n",
+            modules.size(), count, written, unchanged, deleted
+        );
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import com.google.auto.service.AutoService;
+import com.sun.source.util.DocTreePath;
+import com.sun.source.util.DocTrees;
+import jdk.javadoc.doclet.Doclet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import java.util.*;
+
+/**
+ * Generates Lua documentation as part of a normal javac compilation, rather than a separate javadoc run.
+ * <p>
+ * This accepts the same options as {@link LuaDoclet}, passed as {@code -Acc.javadoc.<name>=<value>}, with option names
+ * converted to camel case (so {@code -write-if-changed} becomes {@code -Acc.javadoc.writeIfChanged}). The processor
+ * does nothing unless an output directory is given with {@code -Acc.javadoc.d=DIR}.
+ */
+@AutoService(Processor.class)
+public class LuaDocProcessor extends AbstractProcessor {
+    private static final String PREFIX = "cc.javadoc.";
+    private static final String OUTPUT = PREFIX + "d";
+
+    private final LuaDoclet doclet = new LuaDoclet();
+    private final Map<String, Doclet.Option> options = new HashMap<>();
+    private final Set<String> classes = new LinkedHashSet<>();
+    private boolean enabled;
+
+    public LuaDocProcessor() {
+        for (Doclet.Option option : doclet.getSupportedOptions()) {
+            for (String name : option.getNames()) options.put(PREFIX + optionName(name), option);
+        }
+    }
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+
+        Map<String, String> given = processingEnv.getOptions();
+        enabled = given.containsKey(OUTPUT);
+        if (!enabled) return;
+
+        for (Map.Entry<String, String> entry : given.entrySet()) {
+            Doclet.Option option = options.get(entry.getKey());
+            if (option == null) continue;
+
+            String value = entry.getValue();
+            boolean ok;
+            if (option.getArgumentCount() == 0) {
+                ok = "false".equals(value) || option.process(option.getNames().get(0), List.of());
+            } else {
+                ok = value != null && option.process(option.getNames().get(0), List.of(value));
+            }
+
+            if (!ok) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Invalid value for -A" + entry.getKey() + ": " + value);
+                enabled = false;
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return options.keySet();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        // We need to see every class (not just annotated ones), as @cc.module types may only inherit their methods.
+        return Set.of("*");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (!enabled) return false;
+
+        // Elements may be replaced between rounds, so we only store their names, and look them up again at the end.
+        for (Element element : roundEnv.getRootElements()) addClasses(element);
+
+        if (roundEnv.processingOver()) {
+            List<TypeElement> specified = new ArrayList<>(classes.size());
+            for (String name : classes) {
+                TypeElement type = processingEnv.getElementUtils().getTypeElement(name);
+                if (type != null) specified.add(type);
+            }
+
+            DocTrees trees = DocTrees.instance(processingEnv);
+            boolean ok = doclet.run(
+                processingEnv.getElementUtils(), processingEnv.getTypeUtils(), trees,
+                new ProcessorReporter(processingEnv.getMessager(), trees), specified
+            );
+
+            // Like javadoc, fail the compilation if the doclet did.
+            if (!ok) processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to generate Lua documentation");
+        }
+
+        return false;
+    }
+
+    /**
+     * Add a class and any nested classes. Like javadoc's default ({@code -protected}) mode, we only include public and
+     * protected classes.
+     *
+     * @param element The element to add.
+     */
+    private void addClasses(Element element) {
+        if (!(element instanceof TypeElement type)) return;
+
+        Set<Modifier> modifiers = type.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) && !modifiers.contains(Modifier.PROTECTED)) return;
+
+        classes.add(type.getQualifiedName().toString());
+        for (Element child : type.getEnclosedElements()) addClasses(child);
+    }
+
+    /**
+     * Convert a doclet option name ({@code -write-if-changed}) to a processor option name ({@code writeIfChanged}).
+     *
+     * @param name The doclet option's name.
+     * @return The name of this option for the annotation processor.
+     */
+    private static String optionName(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        boolean upper = false;
+        for (int i = name.startsWith("-") ? 1 : 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '-') {
+                upper = true;
+            } else {
+                builder.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return builder.toString();
+    }
+
+    private static final class ProcessorReporter implements Environment.MsgReporter {
+        private final Messager messager;
+        private final DocTrees trees;
+
+        private ProcessorReporter(Messager messager, DocTrees trees) {
+            this.messager = messager;
+            this.trees = trees;
+        }
+
+        @Override
+        public void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message, @Nullable Element element) {
+            if (element == null) {
+                messager.printMessage(kind, message);
+            } else {
+                messager.printMessage(kind, message, element);
+            }
+        }
+
+        @Override
+        public void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message, @Nonnull DocTreePath path) {
+            trees.printMessage(kind, message, path.getLeaf(), path.getDocComment(), path.getTreePath().getCompilationUnit());
+        }
+    }
+}
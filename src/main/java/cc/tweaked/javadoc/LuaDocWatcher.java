@@ -0,0 +1,163 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.tools.DocumentationTool;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches a source tree, regenerating documentation whenever a file changes.
+ * <p>
+ * This keeps the JVM (and javadoc's file manager) alive between runs, so small edits avoid JVM startup and a cold JIT.
+ * However, each change still runs a complete javadoc task: javac's API provides no way to reuse parsed or attributed
+ * sources between tasks, and modules may reference (and inherit methods from) classes in other files. Each run
+ * therefore takes roughly as long as a warm one-off run, and grows with the size of the source tree. We always pass
+ * {@code -write-if-changed}, so only modules whose output changed are rewritten.
+ * <p>
+ * Only changes to {@code .java} files (and the creation or deletion of directories) trigger a run. Anything inside the
+ * {@code -d} directory is ignored, so writing the output into the source tree does not trigger another run.
+ * <p>
+ * Usage: {@code LuaDocWatcher SOURCE_DIR [javadoc options...]}, for instance
+ * {@code LuaDocWatcher src/main/java -d build/luaJavadoc -cp ...}.
+ */
+public final class LuaDocWatcher {
+    /**
+     * How long to wait for further changes before regenerating. Editors often write several events for one save, so
+     * this avoids regenerating multiple times.
+     */
+    private static final long DEBOUNCE_MS = 50;
+
+    private final Path sources;
+    private final List<String> options;
+    private final Path output;
+
+    /**
+     * Every directory we are watching, so we can tell when one is deleted.
+     */
+    private final Set<Path> directories = new HashSet<>();
+
+    private LuaDocWatcher(Path sources, List<String> options) {
+        this.sources = sources;
+        this.options = options;
+
+        int index = options.lastIndexOf("-d");
+        output = index < 0 || index + 1 >= options.size() || options.get(index + 1).equals("-")
+            ? null : Path.of(options.get(index + 1)).toAbsolutePath().normalize();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: LuaDocWatcher SOURCE_DIR [javadoc options...]");
+            System.exit(1);
+            return;
+        }
+
+        List<String> options = new ArrayList<>(List.of("-quiet", "-write-if-changed"));
+        options.addAll(Arrays.asList(args).subList(1, args.length));
+        new LuaDocWatcher(Path.of(args[0]).toAbsolutePath(), options).run();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        DocumentationTool tool = ToolProvider.getSystemDocumentationTool();
+        try (
+            StandardJavaFileManager fm = tool.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8);
+            WatchService watcher = sources.getFileSystem().newWatchService()
+        ) {
+            fm.setLocationFromPaths(StandardLocation.SOURCE_PATH, List.of(sources));
+            register(watcher, sources);
+
+            generate(tool, fm);
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                do {
+                    changed |= handle(watcher, key);
+                } while ((key = watcher.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null);
+
+                if (changed) generate(tool, fm);
+            }
+        }
+    }
+
+    private void generate(DocumentationTool tool, StandardJavaFileManager fm) throws IOException {
+        long start = System.nanoTime();
+
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(sources)) {
+            files = paths.filter(x -> Files.isRegularFile(x) && x.toString().endsWith(".java")).collect(Collectors.toList());
+        }
+
+        Iterable<? extends JavaFileObject> objects = fm.getJavaFileObjectsFromPaths(files);
+        Boolean ok = tool.getTask(null, fm, null, LuaDoclet.class, options, objects).call();
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.err.printf("%s in %d ms, waiting for changes.%n", ok != null && ok ? "Generated documentation" : "Generation failed", elapsed);
+    }
+
+    /**
+     * Process all events for a directory.
+     *
+     * @param watcher The watch service, used to register new directories.
+     * @param key     The key which was signalled.
+     * @return Whether any source files changed.
+     * @throws IOException If a new directory could not be registered.
+     */
+    private boolean handle(WatchService watcher, WatchKey key) throws IOException {
+        Path directory = (Path) key.watchable();
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                changed = true;
+                continue;
+            }
+
+            Path path = directory.resolve((Path) event.context());
+            if (isOutput(path)) continue;
+
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                register(watcher, path);
+                changed = true;
+            } else if (path.toString().endsWith(".java") || (event.kind() == ENTRY_DELETE && directories.remove(path))) {
+                changed = true;
+            }
+        }
+
+        key.reset();
+        return changed;
+    }
+
+    private void register(WatchService watcher, Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path directory : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                if (isOutput(directory)) continue;
+                directory.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                directories.add(directory);
+            }
+        }
+    }
+
+    private boolean isOutput(Path path) {
+        return output != null && path.toAbsolutePath().normalize().startsWith(output);
+    }
+}
@@ -6,31 +6,65 @@
 
 package cc.tweaked.javadoc;
 
+import com.sun.source.util.DocTreePath;
+import com.sun.source.util.DocTrees;
 import jdk.javadoc.doclet.Doclet;
 import jdk.javadoc.doclet.DocletEnvironment;
 import jdk.javadoc.doclet.Reporter;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.function.Consumer;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public class LuaDoclet implements Doclet {
     private String output = ".";
     private Path root = Path.of(".");
+    private int threads = 1;
+    private boolean onlyIfChanged = false;
+    private boolean check = false;
+    private String diff;
+    private Path cacheDir;
+    private Path resultCacheDir;
+    private long resultCacheSize = 256;
+    private boolean timings = false;
+    private Path timingsJson;
+    private Shard shard;
+    private Path symbolIndex;
+    private final List<Path> linkIndexes = new ArrayList<>();
     private Reporter reporter;
+    private PrintStream standardOutput = System.out;
 
     private final Set<Option> options = Set.of(
-        new BasicOption("-d", "Set the output directory", "FILE", o -> output = o),
+        new BasicOption("-d", "Set the output directory, a .zip or .jar archive, or - to write a tar archive to stdout", "FILE", o -> output = o),
         new BasicOption("-project-root", "Set the directory that @source paths are generated relative to", "ROOT", o -> root = Path.of(o)),
+        new BasicOption("-threads", "Set the number of threads to render documentation with", "N", o -> threads = positive(o)),
+        new FlagOption("-write-if-changed", "Only write files whose contents have changed, and delete stale ones", () -> onlyIfChanged = true),
+        new FlagOption("-check", "Report any problems, without writing any files", () -> check = true),
+        new BasicOption("-diff", "Report which modules differ from an existing output directory, without writing any files. Fails if any differ", "DIR", o -> diff = o),
+        new BasicOption("-cache-dir", "Set the directory to cache rendered snippets in between runs", "DIR", o -> cacheDir = Path.of(o)),
+        new BasicOption("-result-cache", "Set the directory to cache the output of whole runs in, reusing it when nothing has changed", "DIR", o -> resultCacheDir = Path.of(o)),
+        new BasicOption("-result-cache-size", "Set the maximum size of the result cache, in megabytes. Defaults to 256", "MB", o -> resultCacheSize = positive(o)),
+        new FlagOption("-timings", "Report how long each phase took, and the slowest modules and methods", () -> timings = true),
+        new BasicOption("-timings-json", "Write timings to a JSON file", "FILE", o -> timingsJson = Path.of(o)),
+        new BasicOption("-symbol-index", "Write a JSON index of every generated module and function", "FILE", o -> symbolIndex = Path.of(o)),
+        new BasicOption("-link-index", "Resolve references to other projects using their -symbol-index. May be given multiple times", "FILE", o -> linkIndexes.add(Path.of(o))),
+        new BasicOption("-shard", "Only generate the i-th of N shards of modules, numbered from 1", "i/N", o -> shard = Shard.parse(o)),
         new BasicOption("-doctitle", "Title for the overview page", "TITLE"),
         new BasicOption("-windowtitle", "The title of the documentation", "TITLE")
     );
@@ -57,32 +91,324 @@ public class LuaDoclet implements Doclet {
 
     @Override
     public boolean run(DocletEnvironment docEnv) {
-        Environment env = Environment.of(docEnv, reporter);
-        if (env == null) return false;
-
-        Map<ExecutableElement, MethodInfo> methods = docEnv.getSpecifiedElements().stream()
-            .filter(x -> x.getKind() == ElementKind.CLASS).map(TypeElement.class::cast)
-            .flatMap(x -> x.getEnclosedElements().stream())
+        DocletReporter reporter = new DocletReporter(this.reporter, output.equals("-"));
+        return run(docEnv.getElementUtils(), docEnv.getTypeUtils(), docEnv.getDocTrees(), reporter, docEnv.getSpecifiedElements());
+    }
 
-            // Only allow instance methods. Static methods are "generic peripheral" ones, and so are unsuitable.
-            .filter(x -> x.getKind() == ElementKind.METHOD).map(ExecutableElement.class::cast)
-            .flatMap(x -> MethodInfo.of(env, x).stream())
-            .collect(Collectors.toMap(MethodInfo::element, Function.identity(), (x, y) -> {
-                throw new IllegalStateException("Cannot merge terms");
-            }, LinkedHashMap::new));
+    /**
+     * Generate documentation for a set of classes.
+     * <p>
+     * This is shared by the doclet and {@link LuaDocProcessor}, using whatever options have been set on this doclet.
+     *
+     * @param elements  The element utilities for the current compilation.
+     * @param types     The type utilities for the current compilation.
+     * @param trees     The doc tree utilities for the current compilation.
+     * @param reporter  The reporter to print diagnostics with.
+     * @param specified The classes to generate documentation for.
+     * @return Whether documentation was generated successfully. With {@code -diff}, this is false if any modules differ.
+     */
+    boolean run(Elements elements, Types types, DocTrees trees, Environment.MsgReporter reporter, Collection<? extends Element> specified) {
+        Environment env = Environment.of(elements, types, trees, reporter, root);
+        if (env == null) return false;
 
-        Map<TypeElement, ClassInfo> types = docEnv.getSpecifiedElements().stream()
-            .filter(x -> x.getKind() == ElementKind.CLASS).map(TypeElement.class::cast)
-            .distinct()
-            .flatMap(x -> ClassInfo.of(env, x).stream())
-            .collect(Collectors.toMap(ClassInfo::element, Function.identity()));
+        // With "-d -", standard output holds the tar archive, and so anything else printed to it would corrupt the
+        // archive. Keep hold of the real stream, and send everything else to stderr until we're done.
+        PrintStream stdout = System.out;
+        standardOutput = stdout;
+        if (output.equals("-")) System.setOut(System.err);
 
+        Timings timings = this.timings || timingsJson != null ? new Timings() : null;
         try {
-            new Emitter(env, methods, types, root).emit(new File(output));
-            return true;
+            boolean ok = generate(env, specified, timings);
+
+            if (timings != null) {
+                if (this.timings) timings.report(env);
+                if (timingsJson != null) timings.write(timingsJson);
+            }
+            return ok;
         } catch (IOException e) {
             env.message(Diagnostic.Kind.ERROR, e.getMessage());
             return false;
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    private boolean generate(Environment env, Collection<? extends Element> specified, @Nullable Timings timings) throws IOException {
+        // The result cache only stores generated files, so is not used when checking or comparing.
+        ResultCache results = resultCacheDir == null || check || diff != null
+            ? null : new ResultCache(resultCacheDir, resultCacheSize * 1024 * 1024);
+        String resultKey = null;
+        if (results != null) {
+            Timings.Phase phase = phase(timings, "Check result cache");
+            try {
+                resultKey = ResultCache.key(env, specified, resultOptions());
+                try (ResultCache.Entry entry = results.get(resultKey)) {
+                    if (entry != null && entry.isUpToDate(env)) {
+                        int restored;
+                        try (OutputSink sink = openSink()) {
+                            restored = entry.restore(env, sink, shard, symbolIndex);
+                        }
+
+                        env.message(Diagnostic.Kind.NOTE, String.format("Restored %d files from the result cache.", restored));
+                        return true;
+                    }
+                }
+            } finally {
+                end(phase);
+            }
+        }
+
+        Map<ExecutableElement, MethodInfo> methods = new LinkedHashMap<>();
+        Map<TypeElement, ClassInfo> classes = new LinkedHashMap<>();
+        Timings.Phase phase = phase(timings, "Discover");
+        try {
+            discover(env, specified, methods, classes);
+        } finally {
+            end(phase);
+        }
+
+        Emitter emitter;
+        phase = phase(timings, "Resolve docs");
+        try {
+            SnippetCache cache = cacheDir == null || check ? null : new SnippetCache(cacheDir);
+            LinkIndex links = linkIndexes.isEmpty() ? null : LinkIndex.read(linkIndexes);
+            emitter = new Emitter(env, methods, classes, threads, cache, timings, shard, links);
+        } finally {
+            end(phase);
+        }
+
+        if (diff != null) {
+            // Any differences cause the run to fail, so scripts can skip later steps when nothing changed.
+            phase = phase(timings, "Render and compare");
+            try {
+                if (!emitter.diff(new File(diff))) return true;
+                env.message(Diagnostic.Kind.ERROR, "Generated documentation differs from " + diff);
+                return false;
+            } finally {
+                end(phase);
+            }
+        }
+
+        if (check) {
+            phase = phase(timings, "Check");
+            try {
+                emitter.check();
+            } finally {
+                end(phase);
+            }
+            return true;
+        }
+
+        phase = phase(timings, "Render and write");
+        try (OutputSink sink = openSink(); ResultCache.Recorder recorder = results == null ? null : results.record(resultKey)) {
+            // Files are copied into the result cache as they are written, rather than rendering everything twice.
+            emitter.emit(sink, recorder);
+            if (symbolIndex != null) emitter.writeSymbolIndex(symbolIndex);
+
+            // Runs with problems are not cached, so that a hit never hides any errors or warnings.
+            if (recorder != null && env.problems() == 0) {
+                recorder.commit(ResultCache.dependencies(env, specified), symbolIndex);
+            }
+            return true;
+        } finally {
+            end(phase);
+        }
+    }
+
+    /**
+     * The options which affect the files generated by a run, and so form part of the {@link ResultCache} key.
+     *
+     * @return The relevant options.
+     * @throws IOException If a {@code -link-index} could not be read.
+     */
+    private List<String> resultOptions() throws IOException {
+        List<String> options = new ArrayList<>();
+        options.add("root=" + root.toAbsolutePath());
+        options.add("shard=" + (shard == null ? "" : shard.index() + "/" + shard.count()));
+        options.add("symbolIndex=" + (symbolIndex != null));
+        for (Path index : linkIndexes) options.add("linkIndex=" + Files.readString(index));
+        return options;
+    }
+
+    /**
+     * Open the sink to write documentation to.
+     * <p>
+     * This is determined by {@code -d}: paths ending in {@code .zip} or {@code .jar} are written as a single archive,
+     * {@code -} writes a tar archive to standard output, and anything else is a directory.
+     *
+     * @return The sink to write to.
+     * @throws IOException If the sink could not be opened.
+     */
+    @Nonnull
+    protected OutputSink openSink() throws IOException {
+        if (output.equals("-")) return new OutputSink.Tar(new StandardOutput(standardOutput));
+
+        Path path = Path.of(output);
+        if (output.endsWith(".zip") || output.endsWith(".jar")) {
+            if (path.getParent() != null) Files.createDirectories(path.getParent());
+            return new OutputSink.Zip(onlyIfChanged ? new IfChangedOutputStream(path) : Files.newOutputStream(path));
+        }
+
+        File directory = path.toFile();
+        if (!directory.exists() && !directory.mkdirs()) throw new IOException("Cannot create output directory: " + output);
+        return new OutputSink.Directory(path, onlyIfChanged);
+    }
+
+    @Nullable
+    private static Timings.Phase phase(@Nullable Timings timings, @Nonnull String name) {
+        return timings == null ? null : timings.phase(name);
+    }
+
+    private static void end(@Nullable Timings.Phase phase) {
+        if (phase != null) phase.end();
+    }
+
+    /**
+     * Find all modules and {@code @LuaFunction} methods in a set of classes.
+     * <p>
+     * This visits each class once. Most classes are neither modules nor contain any Lua functions, so both
+     * {@link ClassInfo#of(Environment, TypeElement)} and {@link MethodInfo#of(Environment, ExecutableElement)} do a
+     * cheap check before parsing any doc comments.
+     *
+     * @param env       The environment to search in.
+     * @param specified The elements to search.
+     * @param methods   The map to add methods to.
+     * @param classes   The map to add modules to.
+     */
+    static void discover(
+        Environment env, Collection<? extends Element> specified,
+        Map<ExecutableElement, MethodInfo> methods, Map<TypeElement, ClassInfo> classes
+    ) {
+        Set<TypeElement> seen = new HashSet<>();
+        for (Element element : specified) {
+            if (element.getKind() != ElementKind.CLASS || !seen.add((TypeElement) element)) continue;
+            TypeElement type = (TypeElement) element;
+
+            ClassInfo.of(env, type).ifPresent(x -> classes.put(type, x));
+
+            for (Element child : type.getEnclosedElements()) {
+                if (child.getKind() != ElementKind.METHOD) continue;
+                MethodInfo.of(env, (ExecutableElement) child).ifPresent(x -> methods.put(x.element(), x));
+            }
+        }
+    }
+
+    private static int positive(String value) {
+        int result = Integer.parseInt(value);
+        if (result <= 0) throw new IllegalArgumentException("Expected a positive number, got " + value);
+        return result;
+    }
+
+    /**
+     * Writes to standard output, without closing it.
+     * <p>
+     * {@link PrintStream} swallows any errors, so we check for them when flushing (and so also when the archive is
+     * closed). Otherwise, a broken pipe would look like a successful run.
+     */
+    private static final class StandardOutput extends OutputStream {
+        private final PrintStream out;
+
+        private StandardOutput(PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) {
+            out.write(b);
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out.checkError()) throw new IOException("Cannot write to standard output");
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static final class DocletReporter implements Environment.MsgReporter {
+        private final Reporter reporter;
+        private final boolean notesToStderr;
+
+        /**
+         * Create a new reporter.
+         *
+         * @param reporter      The reporter to print to.
+         * @param notesToStderr Print notes to javadoc's diagnostic stream (stderr), rather than alongside any other
+         *                      output. This is used when writing the tar archive to standard output.
+         */
+        private DocletReporter(Reporter reporter, boolean notesToStderr) {
+            this.reporter = reporter;
+            this.notesToStderr = notesToStderr;
+        }
+
+        @Override
+        public void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message, @Nullable Element element) {
+            if (kind == Diagnostic.Kind.NOTE && notesToStderr) {
+                PrintWriter writer = reporter.getDiagnosticWriter();
+                writer.println(message);
+                writer.flush();
+            } else if (element == null) {
+                reporter.print(kind, message);
+            } else {
+                reporter.print(kind, element, message);
+            }
+        }
+
+        @Override
+        public void message(@Nonnull Diagnostic.Kind kind, @Nonnull String message, @Nonnull DocTreePath path) {
+            reporter.print(kind, path, message);
+        }
+    }
+
+    private static class FlagOption implements Option {
+        private final String name;
+        private final String description;
+        private final Runnable process;
+
+        private FlagOption(String name, String description, Runnable process) {
+            this.name = name;
+            this.description = description;
+            this.process = process;
+        }
+
+        @Override
+        public int getArgumentCount() {
+            return 0;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public Kind getKind() {
+            return Kind.STANDARD;
+        }
+
+        @Override
+        public List<String> getNames() {
+            return Collections.singletonList(name);
+        }
+
+        @Override
+        public String getParameters() {
+            return "";
+        }
+
+        @Override
+        public boolean process(String option, List<String> arguments) {
+            process.run();
+            return true;
         }
     }
 
@@ -132,7 +458,11 @@ public class LuaDoclet implements Doclet {
         @Override
         public boolean process(String option, List<String> arguments) {
             if (arguments.isEmpty()) return false;
-            process.accept(arguments.get(0));
+            try {
+                process.accept(arguments.get(0));
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
             return true;
         }
     }
@@ -0,0 +1,255 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Somewhere to write generated files to.
+ * <p>
+ * Modules may be rendered on several threads, so {@link #open(String)} must be thread-safe.
+ */
+public interface OutputSink extends Closeable {
+    /**
+     * Open a file for writing. The file is complete once the returned stream is closed.
+     *
+     * @param name The name of the file, such as {@code module.lua}.
+     * @return The stream to write the file's contents to.
+     * @throws IOException If the file could not be opened.
+     */
+    @Nonnull
+    OutputStream open(@Nonnull String name) throws IOException;
+
+    /**
+     * Finish writing files.
+     *
+     * @throws IOException If the files could not be written.
+     */
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * Writes each file to a directory.
+     */
+    final class Directory implements OutputSink {
+        private final Path directory;
+        private final boolean onlyIfChanged;
+
+        /**
+         * Create a new directory sink.
+         *
+         * @param directory     The directory to write to. This should already exist.
+         * @param onlyIfChanged Only write files whose contents have changed, using {@link IfChangedOutputStream}.
+         */
+        public Directory(@Nonnull Path directory, boolean onlyIfChanged) {
+            this.directory = directory;
+            this.onlyIfChanged = onlyIfChanged;
+        }
+
+        @Nonnull
+        public Path directory() {
+            return directory;
+        }
+
+        public boolean onlyIfChanged() {
+            return onlyIfChanged;
+        }
+
+        @Nonnull
+        @Override
+        public OutputStream open(@Nonnull String name) throws IOException {
+            Path file = directory.resolve(name);
+            return onlyIfChanged ? new IfChangedOutputStream(file) : new FileOutputStream(file.toFile());
+        }
+    }
+
+    /**
+     * A sink which buffers each file until its stream is closed, and then writes it in one go.
+     * <p>
+     * This means only the files currently being written are held in memory, while still allowing several threads to
+     * write files at once.
+     */
+    abstract class Buffered implements OutputSink {
+        @Nonnull
+        @Override
+        public final OutputStream open(@Nonnull String name) {
+            return new ByteArrayOutputStream() {
+                private boolean closed = false;
+
+                @Override
+                public void close() throws IOException {
+                    if (closed) return;
+                    closed = true;
+                    synchronized (Buffered.this) {
+                        Buffered.this.write(name, toByteArray());
+                    }
+                }
+            };
+        }
+
+        /**
+         * Write a complete file. This is only called by one thread at a time.
+         *
+         * @param name     The name of the file.
+         * @param contents The file's contents.
+         * @throws IOException If the file could not be written.
+         */
+        protected abstract void write(@Nonnull String name, @Nonnull byte[] contents) throws IOException;
+    }
+
+    /**
+     * Stores each file in memory. This is mostly useful for testing.
+     */
+    final class Memory extends Buffered {
+        private final Map<String, byte[]> files = new TreeMap<>();
+
+        @Override
+        protected void write(@Nonnull String name, @Nonnull byte[] contents) {
+            files.put(name, contents);
+        }
+
+        /**
+         * Get the contents of a file.
+         *
+         * @param name The name of the file.
+         * @return The file's contents, or {@code null} if it was not written.
+         */
+        @Nullable
+        public synchronized byte[] get(@Nonnull String name) {
+            return files.get(name);
+        }
+
+        /**
+         * Get every file which has been written, sorted by name.
+         *
+         * @return The files and their contents.
+         */
+        @Nonnull
+        public synchronized Map<String, byte[]> files() {
+            return Collections.unmodifiableMap(new TreeMap<>(files));
+        }
+    }
+
+    /**
+     * Writes every file to a single zip (or jar) archive.
+     * <p>
+     * Each file is added to the archive as soon as it has been written, so modules appear in the order they finished
+     * rendering. Entries have a fixed timestamp, so when rendering on a single thread, the archive is the same whenever
+     * its contents are.
+     */
+    final class Zip extends Buffered {
+        private final ZipOutputStream zip;
+
+        /**
+         * Create a new zip sink.
+         *
+         * @param out The stream to write the archive to. This is closed along with the sink.
+         */
+        public Zip(@Nonnull OutputStream out) {
+            zip = new ZipOutputStream(new BufferedOutputStream(out));
+        }
+
+        @Override
+        protected void write(@Nonnull String name, @Nonnull byte[] contents) throws IOException {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setTime(0);
+            zip.putNextEntry(entry);
+            zip.write(contents);
+            zip.closeEntry();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            zip.close();
+        }
+    }
+
+    /**
+     * Writes every file to a single (ustar) tar stream, such as standard output.
+     * <p>
+     * Like {@link Zip}, each file is added to the archive as soon as it has been written.
+     */
+    final class Tar extends Buffered {
+        private static final int BLOCK = 512;
+
+        private final OutputStream out;
+
+        /**
+         * Create a new tar sink.
+         *
+         * @param out The stream to write the archive to. This is closed along with the sink.
+         */
+        public Tar(@Nonnull OutputStream out) {
+            this.out = new BufferedOutputStream(out);
+        }
+
+        @Override
+        protected void write(@Nonnull String name, @Nonnull byte[] contents) throws IOException {
+            out.write(header(name, contents.length));
+            out.write(contents);
+            out.write(new byte[padding(contents.length)]);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try (out) {
+                // The archive ends with two empty blocks.
+                out.write(new byte[BLOCK * 2]);
+            }
+        }
+        private static int padding(int length) {
+            return (BLOCK - length % BLOCK) % BLOCK;
+        }
+
+        private static byte[] header(String name, int size) throws IOException {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (nameBytes.length > 100) throw new IOException("File name too long for tar archive: " + name);
+
+            byte[] header = new byte[BLOCK];
+            System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+            octal(header, 100, 8, 0644); // Mode
+            octal(header, 108, 8, 0); // Owner
+            octal(header, 116, 8, 0); // Group
+            octal(header, 124, 12, size);
+            octal(header, 136, 12, 0); // Modification time
+            header[156] = '0'; // A regular file
+            ascii(header, 257, "ustar\0" + "00");
+
+            // The checksum is computed with the checksum field set to spaces.
+            for (int i = 148; i < 156; i++) header[i] = ' ';
+            int checksum = 0;
+            for (byte b : header) checksum += b & 0xFF;
+            octal(header, 148, 7, checksum);
+
+            return header;
+        }
+
+        /**
+         * Write a NUL-terminated octal number, padded with zeros to fill its field.
+         */
+        private static void octal(byte[] header, int offset, int length, long value) {
+            String digits = Long.toOctalString(value);
+            ascii(header, offset, "0".repeat(length - 1 - digits.length()) + digits);
+            header[offset + length - 1] = 0;
+        }
+
+        private static void ascii(byte[] header, int offset, String value) {
+            for (int i = 0; i < value.length(); i++) header[offset + i] = (byte) value.charAt(i);
+        }
+    }
+}
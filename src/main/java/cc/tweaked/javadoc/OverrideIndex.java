@@ -0,0 +1,128 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import java.util.*;
+
+/**
+ * An index of overridden methods, used to resolve {@code {@inheritDoc}}.
+ * <p>
+ * Finding the method a doc comment is inherited from requires walking every supertype and checking each of its
+ * methods. Large peripheral hierarchies inherit the same interface methods many times over, so both the overridden
+ * method and its resolved doc comment are computed once per method and then cached. Like the rest of javac's model,
+ * this is not thread-safe.
+ */
+public final class OverrideIndex {
+    private final Environment env;
+
+    private final Map<ExecutableElement, Optional<ExecutableElement>> parents = new HashMap<>();
+    private final Map<TypeElement, Map<Name, List<ExecutableElement>>> methods = new HashMap<>();
+    private final Map<ExecutableElement, Map<ResolvedDoc.Resolver, Environment.Buffered<ResolvedDoc>>> docs = new HashMap<>();
+
+    OverrideIndex(@Nonnull Environment env) {
+        this.env = env;
+    }
+
+    /**
+     * Find the nearest method overridden by this one which has a doc comment. Supertypes are searched breadth-first,
+     * starting with the superclass and then interfaces.
+     *
+     * @param method The method to find the parent of.
+     * @return The overridden method, or {@code null} if none could be found.
+     */
+    @Nullable
+    public ExecutableElement documentedParent(@Nonnull ExecutableElement method) {
+        Optional<ExecutableElement> parent = parents.get(method);
+        if (parent == null) parents.put(method, parent = Optional.ofNullable(findParent(method)));
+        return parent.orElse(null);
+    }
+
+    /**
+     * Get the resolved doc comment used by {@code {@inheritDoc}} on this method.
+     * <p>
+     * The parent's comment is resolved with the same {@link ResolvedDoc.Resolver} as the inheriting comment, and is
+     * cached for each resolver. Callers should therefore reuse resolvers where possible.
+     * <p>
+     * Any problems found while resolving the parent's comment (such as broken references) are also cached, and
+     * reported again every time the comment is inherited. Otherwise, they would be lost if the first inheriting
+     * method was resolved {@linkplain Environment#quietly(Runnable) quietly}.
+     *
+     * @param method  The method to find the inherited comment for.
+     * @param resolve The resolver used by the inheriting comment.
+     * @return The inherited comment, or {@code null} if there is no documented parent.
+     */
+    @Nullable
+    public ResolvedDoc inheritedDoc(@Nonnull ExecutableElement method, @Nonnull ResolvedDoc.Resolver resolve) {
+        ExecutableElement parent = documentedParent(method);
+        if (parent == null) return null;
+
+        // Resolving the parent may itself resolve inherited comments, so we avoid computeIfAbsent here.
+        Map<ResolvedDoc.Resolver, Environment.Buffered<ResolvedDoc>> resolved = docs.get(parent);
+        Environment.Buffered<ResolvedDoc> doc = resolved == null ? null : resolved.get(resolve);
+        if (doc == null) {
+            doc = env.buffered(() -> ResolvedDoc.of(env, parent, resolve));
+            docs.computeIfAbsent(parent, k -> new HashMap<>()).put(resolve, doc);
+        }
+
+        return doc.get();
+    }
+
+    @Nullable
+    private ExecutableElement findParent(ExecutableElement method) {
+        Queue<TypeElement> types = new ArrayDeque<>();
+        TypeElement currentType = (TypeElement) method.getEnclosingElement();
+        addSupers(types, currentType);
+
+        TypeElement superType;
+        while ((superType = types.poll()) != null) {
+            for (ExecutableElement superMethod : methodsNamed(superType, method.getSimpleName())) {
+                if (superMethod.getParameters().size() != method.getParameters().size()) continue;
+                if (!env.elements().overrides(method, superMethod, currentType)) continue;
+
+                if (env.elements().getDocComment(superMethod) != null) return superMethod;
+            }
+
+            addSupers(types, superType);
+        }
+
+        return null;
+    }
+
+    private List<ExecutableElement> methodsNamed(TypeElement type, Name name) {
+        Map<Name, List<ExecutableElement>> byName = methods.get(type);
+        if (byName == null) {
+            byName = new HashMap<>();
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                byName.computeIfAbsent(method.getSimpleName(), k -> new ArrayList<>(1)).add(method);
+            }
+            methods.put(type, byName);
+        }
+
+        return byName.getOrDefault(name, List.of());
+    }
+
+    private static void addSupers(Queue<TypeElement> queue, TypeElement element) {
+        if (element.getSuperclass().getKind() == TypeKind.DECLARED) queue.add(asElement(element.getSuperclass()));
+
+        for (TypeMirror iface : element.getInterfaces()) {
+            if (iface.getKind() == TypeKind.DECLARED) queue.add(asElement(iface));
+        }
+    }
+
+    private static TypeElement asElement(TypeMirror type) {
+        return (TypeElement) ((DeclaredType) type).asElement();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.lang.model.element.TypeElement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A cache of resolved {@code {@link}} and {@code @see} references.
+ * <p>
+ * The same references (such as {@code {@link #getName}}) appear many times within a class, and resolving each one
+ * requires asking javac to look up the reference and then converting it to a Lua name. A reference's signature always
+ * resolves to the same element within the same class (and so the same file and imports), so we cache the result for
+ * each class, signature and {@link ResolvedDoc.Resolver}.
+ * <p>
+ * Like the rest of javac's model, this is not thread-safe.
+ */
+public final class ReferenceCache {
+    private final Map<Key, Result> results = new HashMap<>();
+
+    /**
+     * Resolve a reference, reusing a previous result if available.
+     *
+     * @param scope     The class containing this reference.
+     * @param resolver  The resolver used to convert this reference to a Lua name.
+     * @param signature The reference's signature.
+     * @param resolve   The function to resolve this reference if it is not cached.
+     * @return The resolved reference.
+     */
+    @Nonnull
+    public Result resolve(
+        @Nonnull TypeElement scope, @Nonnull ResolvedDoc.Resolver resolver, @Nonnull String signature,
+        @Nonnull Supplier<Result> resolve
+    ) {
+        Key key = new Key(scope, resolver, signature);
+        Result result = results.get(key);
+        if (result == null) results.put(key, result = resolve.get());
+        return result;
+    }
+
+    /**
+     * The result of resolving a reference: either a Lua name or an error message.
+     */
+    public static final class Result {
+        private final String name;
+        private final String error;
+
+        private Result(String name, String error) {
+            this.name = name;
+            this.error = error;
+        }
+
+        @Nonnull
+        public static Result of(@Nonnull String name) {
+            return new Result(name, null);
+        }
+
+        @Nonnull
+        public static Result error(@Nonnull String error) {
+            return new Result(null, error);
+        }
+
+        /**
+         * The Lua name of this reference.
+         *
+         * @return The Lua name, or {@code null} if this reference could not be resolved.
+         */
+        @Nullable
+        public String name() {
+            return name;
+        }
+
+        /**
+         * The error to report when this reference could not be resolved.
+         *
+         * @return The error message, or {@code null} if this reference was resolved.
+         */
+        @Nullable
+        public String error() {
+            return error;
+        }
+    }
+
+    private static final class Key {
+        private final TypeElement scope;
+        private final ResolvedDoc.Resolver resolver;
+        private final String signature;
+
+        private Key(TypeElement scope, ResolvedDoc.Resolver resolver, String signature) {
+            this.scope = scope;
+            this.resolver = resolver;
+            this.signature = signature;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key other)) return false;
+            return scope == other.scope && resolver == other.resolver && signature.equals(other.signature);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(scope), System.identityHashCode(resolver), signature);
+        }
+    }
+}
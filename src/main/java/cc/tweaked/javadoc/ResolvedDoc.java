@@ -0,0 +1,268 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import com.sun.source.doctree.*;
+import com.sun.source.util.DocTreePath;
+import com.sun.source.util.DocTreePathScanner;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import java.util.*;
+
+/**
+ * A doc comment, along with everything {@link DocConverter} needs to look up in javac's model.
+ * <p>
+ * javac is not thread-safe, so these lookups are all done up-front on the doclet's thread. After construction this is
+ * immutable, and so rendering it may happen on any thread.
+ */
+public final class ResolvedDoc {
+    private final Element owner;
+    private final DocCommentTree tree;
+    private final Map<ReferenceTree, String> references;
+    private final List<String> resolved;
+    private final ResolvedDoc inherited;
+    private final boolean hasParam;
+    private final boolean hasReturn;
+
+    private ResolvedDoc(
+        Element owner, DocCommentTree tree, Map<ReferenceTree, String> references, List<String> resolved,
+        ResolvedDoc inherited, boolean hasParam, boolean hasReturn
+    ) {
+        this.owner = owner;
+        this.tree = tree;
+        this.references = references;
+        this.resolved = resolved;
+        this.inherited = inherited;
+        this.hasParam = hasParam;
+        this.hasReturn = hasReturn;
+    }
+
+    /**
+     * Resolve the doc comment for an element.
+     *
+     * @param env     The environment to resolve within.
+     * @param owner   The element whose doc comment we're resolving.
+     * @param resolve The function to convert referenced elements into Lua names.
+     * @return The resolved doc comment.
+     */
+    @Nonnull
+    public static ResolvedDoc of(@Nonnull Environment env, @Nonnull Element owner, @Nonnull Resolver resolve) {
+        DocCommentTree tree = env.trees().getDocCommentTree(owner);
+        if (tree == null) return new ResolvedDoc(owner, null, Map.of(), List.of(), null, false, false);
+
+        Scanner scanner = new Scanner(env, owner, resolve);
+        scanner.scan(new DocTreePath(env.location(owner).path(), tree), null);
+        return new ResolvedDoc(
+            owner, tree, Collections.unmodifiableMap(scanner.references), scanner.resolved, scanner.inherited,
+            scanner.hasParam, scanner.hasReturn
+        );
+    }
+
+    @Nonnull
+    public Element owner() {
+        return owner;
+    }
+
+    /**
+     * The doc comment of this element.
+     *
+     * @return The doc comment, or {@code null} if this element is not documented.
+     */
+    @Nullable
+    public DocCommentTree tree() {
+        return tree;
+    }
+
+    /**
+     * Get the Lua name of a reference within this doc comment.
+     *
+     * @param reference The reference to look up.
+     * @return The Lua name, or {@code null} if it could not be resolved.
+     */
+    @Nullable
+    public String reference(@Nonnull ReferenceTree reference) {
+        return references.get(reference);
+    }
+
+    /**
+     * The doc comment used by {@code {@inheritDoc}}. This is resolved relative to the overridden method, but with the
+     * same {@link Resolver} as this comment.
+     *
+     * @return The parent's doc comment, or {@code null} if it could not be found.
+     */
+    @Nullable
+    public ResolvedDoc inherited() {
+        return inherited;
+    }
+
+    /**
+     * Whether this doc comment has a {@code @cc.param} or {@code @cc.tparam} tag.
+     *
+     * @return Whether parameters are documented manually.
+     */
+    public boolean hasParam() {
+        return hasParam;
+    }
+
+    /**
+     * Whether this doc comment has a {@code @cc.return} or {@code @cc.treturn} tag.
+     *
+     * @return Whether return values are documented manually.
+     */
+    public boolean hasReturn() {
+        return hasReturn;
+    }
+
+    /**
+     * Get a textual summary of everything which affects how this comment is rendered: the comment itself, what each
+     * of its references resolved to and any inherited comment. Two comments with the same fingerprint render
+     * identically.
+     * <p>
+     * This prints the doc comment, and so must only be called on the doclet's thread.
+     *
+     * @return This comment's fingerprint.
+     */
+    @Nonnull
+    public String fingerprint() {
+        StringBuilder builder = new StringBuilder();
+        for (ResolvedDoc doc = this; doc != null; doc = doc.inherited) {
+            builder.append(doc.tree).append('\0');
+            for (String name : doc.resolved) builder.append(name).append('\0');
+        }
+        return builder.toString();
+    }
+
+    public interface Resolver {
+        /**
+         * Resove a reference to an element.
+         *
+         * @param element   The element to resolve.
+         * @param qualified Whether this term was referenced unqualified ({@code #foo}) or qualified ({@code Foo#foo()}).
+         * @return The Lua reference, or {@code null} if it could not be resolved.
+         */
+        @Nullable
+        String resolve(Element element, boolean qualified);
+    }
+
+    /**
+     * Walks a doc comment, resolving every link and {@code {@inheritDoc}}.
+     */
+    private static final class Scanner extends DocTreePathScanner<Void, Void> {
+        private final Environment env;
+        private final Element owner;
+        private final Resolver resolve;
+
+        private final Map<ReferenceTree, String> references = new IdentityHashMap<>();
+        private final List<String> resolved = new ArrayList<>();
+        private boolean resolvedInherited = false;
+        private ResolvedDoc inherited;
+        private boolean hasParam = false;
+        private boolean hasReturn = false;
+
+        private Scanner(Environment env, Element owner, Resolver resolve) {
+            this.env = env;
+            this.owner = owner;
+            this.resolve = resolve;
+        }
+
+        @Override
+        public Void visitReference(ReferenceTree node, Void unused) {
+            // Only links are rendered as Lua references. Anything else (such as {@value} or @throws) is either rendered
+            // as-is or not at all, so don't try to resolve it.
+            switch (getCurrentPath().getParentPath().getLeaf().getKind()) {
+                case LINK, LINK_PLAIN, SEE -> {
+                }
+                default -> {
+                    return null;
+                }
+            }
+
+            Events.ReferenceResolved event = new Events.ReferenceResolved();
+            event.begin();
+
+            String signature = node.getSignature();
+            ReferenceCache.Result result = env.references().resolve(scope(), resolve, signature, () -> resolveReference(signature));
+            String alternative = result.name();
+            if (alternative == null) {
+                env.message(Diagnostic.Kind.ERROR, result.error(), owner, node);
+                resolved.add("");
+            } else {
+                references.put(node, alternative);
+                resolved.add(alternative);
+            }
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.owner = owner.toString();
+                event.signature = signature;
+                event.luaName = alternative;
+                event.commit();
+            }
+            return null;
+        }
+
+        private ReferenceCache.Result resolveReference(String signature) {
+            Element referred = env.trees().getElement(getCurrentPath());
+            if (referred == null) return ReferenceCache.Result.error("Cannot resolve reference.");
+            env.depend(referred);
+
+            String alternative = resolve.resolve(referred, !signature.startsWith("#"));
+            return alternative == null
+                ? ReferenceCache.Result.error("Cannot convert " + referred + " into a Lua reference.")
+                : ReferenceCache.Result.of(alternative);
+        }
+
+        /**
+         * The class which references in this comment are resolved relative to.
+         *
+         * @return The class containing this comment.
+         */
+        private TypeElement scope() {
+            return owner instanceof TypeElement type ? type : (TypeElement) owner.getEnclosingElement();
+        }
+
+        @Override
+        public Void visitUnknownBlockTag(UnknownBlockTagTree node, Void unused) {
+            switch (node.getTagName()) {
+                case "cc.param", "cc.tparam" -> hasParam = true;
+                case "cc.return", "cc.treturn" -> hasReturn = true;
+            }
+            return super.visitUnknownBlockTag(node, unused);
+        }
+
+        @Override
+        public Void visitInheritDoc(InheritDocTree node, Void unused) {
+            if (!resolvedInherited) {
+                resolvedInherited = true;
+
+                Events.InheritDocResolved event = new Events.InheritDocResolved();
+                event.begin();
+                if (owner instanceof ExecutableElement method) inherited = env.overrides().inheritedDoc(method, resolve);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.method = owner.getEnclosingElement() + "#" + owner;
+                    event.parent = inherited == null ? null : inherited.owner().getEnclosingElement() + "#" + inherited.owner();
+                    event.commit();
+                }
+            }
+
+            if (inherited == null) {
+                DocConverter.report(env, owner, node, "Cannot resolve parent doc comment.");
+            } else {
+                // The parent's tags are visited as part of this comment, so may document our parameters.
+                hasParam |= inherited.hasParam();
+                hasReturn |= inherited.hasReturn();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,520 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.TreePath;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A persistent cache of the files generated by a whole run of the doclet, keyed by a hash of everything the run reads.
+ * <p>
+ * Unlike {@link SnippetCache}, a hit skips resolving and rendering entirely, and just writes the previous run's files.
+ * This is intended for CI machines which build the same sources many times.
+ * <p>
+ * Entries are found by a {@linkplain #key(Environment, Collection, List) key} built from the documented sources and
+ * options. However, a run may also read other classes, such as the parent of a method using {@code {@inheritDoc}} or
+ * the target of a link, which we cannot know in advance. Each entry stores a {@linkplain #fingerprint(Environment,
+ * TypeElement) fingerprint} of these classes, and is only used if none of them have changed.
+ * <p>
+ * Each entry is stored as a zip archive named after its key. Entries are evicted in least-recently-used order (using
+ * their modification time, which is updated on every hit) once the cache grows beyond its maximum size.
+ * <p>
+ * Like {@link SnippetCache}, any errors reading or writing the cache are ignored, and documentation is generated as
+ * normal.
+ */
+public final class ResultCache {
+    /**
+     * The version of the cache. This should be bumped whenever the format of entries changes.
+     */
+    private static final String VERSION = "2";
+
+    private static final String EXTENSION = ".zip";
+
+    /**
+     * The directory within an entry which holds the generated files.
+     */
+    private static final String FILES = "files/";
+
+    /**
+     * The entry holding the {@code -symbol-index}, if one was written.
+     */
+    private static final String SYMBOL_INDEX = "symbol-index.json";
+
+    /**
+     * The entry listing the classes this run read, and their fingerprints.
+     */
+    private static final String DEPENDENCIES = "dependencies.txt";
+
+    private static String docletFingerprint;
+
+    private final Path directory;
+    private final long maxSize;
+
+    /**
+     * Create a new result cache.
+     *
+     * @param directory The directory to store entries in.
+     * @param maxSize   The maximum size of all entries, in bytes.
+     */
+    public ResultCache(@Nonnull Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Compute the key of a run. This includes:
+     *
+     * <ul>
+     *     <li>The name and contents of every source file.</li>
+     *     <li>The {@linkplain #fingerprint(Environment, TypeElement) fingerprints} of the CC: Tweaked API classes.</li>
+     *     <li>A hash of the doclet itself, so upgrading the doclet never reuses old output.</li>
+     *     <li>Any options which affect the output.</li>
+     * </ul>
+     * <p>
+     * Any other classes which the run reads are checked when the entry is used, with {@link Entry#isUpToDate(Environment)}.
+     *
+     * @param env       The current environment.
+     * @param specified The elements being documented.
+     * @param options   Any options which affect the generated files.
+     * @return The key for this run.
+     * @throws IOException If a source file could not be read.
+     */
+    @Nonnull
+    public static String key(
+        @Nonnull Environment env, @Nonnull Collection<? extends Element> specified, @Nonnull List<String> options
+    ) throws IOException {
+        // Several classes may share a file, so find the set of files first.
+        Map<String, CompilationUnitTree> units = new TreeMap<>();
+        for (Element element : specified) {
+            if (!(element instanceof TypeElement)) continue;
+            TreePath path = env.trees().getPath(element);
+            if (path == null) continue;
+
+            CompilationUnitTree unit = path.getCompilationUnit();
+            units.putIfAbsent(env.location(element).file(), unit);
+        }
+
+        List<String> parts = new ArrayList<>();
+        parts.add(VERSION);
+        parts.add(docletFingerprint());
+        parts.addAll(options);
+
+        for (TypeElement type : Arrays.asList(env.getLuaFunction(), env.getLuaApiType(), env.getPeripheralType(), env.getGenericPeripheralType())) {
+            parts.add(type == null ? "" : type.getQualifiedName() + " " + fingerprint(env, type));
+        }
+
+        for (Map.Entry<String, CompilationUnitTree> unit : units.entrySet()) {
+            parts.add(unit.getKey());
+            parts.add(unit.getValue().getSourceFile().getCharContent(true).toString());
+        }
+
+        return SnippetCache.key(parts.toArray(new String[0]));
+    }
+
+    /**
+     * Find every class which a run depends on, other than the ones being documented (which are part of its
+     * {@linkplain #key(Environment, Collection, List) key}).
+     * <p>
+     * This includes every class recorded with {@link Environment#depend(Element)}, along with all supertypes of them
+     * and of the documented classes, as these determine which methods are inherited and where inherited docs come
+     * from.
+     *
+     * @param env       The current environment, after documentation has been generated.
+     * @param specified The elements being documented.
+     * @return The fingerprint of each class, keyed by its qualified name.
+     * @throws IOException If a source file could not be read.
+     */
+    @Nonnull
+    public static Map<String, String> dependencies(
+        @Nonnull Environment env, @Nonnull Collection<? extends Element> specified
+    ) throws IOException {
+        Set<TypeElement> seen = new HashSet<>(env.dependencies());
+        Deque<TypeElement> queue = new ArrayDeque<>(seen);
+        for (Element element : specified) {
+            if (element instanceof TypeElement type && seen.add(type)) queue.add(type);
+        }
+
+        TypeElement type;
+        while ((type = queue.poll()) != null) {
+            for (TypeMirror supertype : env.types().directSupertypes(type.asType())) {
+                Element element = env.types().asElement(supertype);
+                if (element instanceof TypeElement superElement && seen.add(superElement)) queue.add(superElement);
+            }
+        }
+
+        // Fingerprints cover a whole file (or compiled class), so only include outermost classes.
+        Set<TypeElement> outermost = new HashSet<>();
+        for (TypeElement dependency : seen) {
+            while (dependency.getNestingKind() != NestingKind.TOP_LEVEL && dependency.getEnclosingElement() instanceof TypeElement parent) {
+                dependency = parent;
+            }
+            outermost.add(dependency);
+        }
+        outermost.removeAll(specified);
+
+        Map<String, String> dependencies = new TreeMap<>();
+        for (TypeElement dependency : outermost) {
+            dependencies.put(dependency.getQualifiedName().toString(), fingerprint(env, dependency));
+        }
+        return dependencies;
+    }
+
+    /**
+     * Compute a fingerprint of a class, which changes whenever it could change the generated documentation.
+     * <p>
+     * For classes with source code, this is a hash of the whole file. Compiled classes have no doc comments, so only
+     * their signatures can affect the documentation, and so we hash those instead.
+     *
+     * @param env  The current environment.
+     * @param type The class to fingerprint.
+     * @return The class's fingerprint.
+     * @throws IOException If the class's source file could not be read.
+     */
+    @Nonnull
+    static String fingerprint(@Nonnull Environment env, @Nonnull TypeElement type) throws IOException {
+        TreePath path = env.trees().getPath(type);
+        if (path != null) return SnippetCache.key(path.getCompilationUnit().getSourceFile().getCharContent(true).toString());
+
+        StringBuilder signature = new StringBuilder();
+        describe(type, signature);
+        return SnippetCache.key(signature.toString());
+    }
+
+    private static void describe(Element element, StringBuilder out) {
+        out.append(element.getKind()).append(' ').append(element.getModifiers()).append(' ')
+            .append(element.getAnnotationMirrors()).append(' ').append(element.getSimpleName()).append(' ')
+            .append(element.asType());
+        if (element instanceof TypeElement type) out.append(' ').append(type.getSuperclass()).append(' ').append(type.getInterfaces());
+        out.append('\n');
+
+        for (Element child : element.getEnclosedElements()) describe(child, out);
+    }
+
+    /**
+     * A hash of the doclet's own classes (or jar), so that output from different builds of the doclet is never mixed.
+     *
+     * @return The doclet's fingerprint, or an empty string if it could not be computed.
+     */
+    private static synchronized String docletFingerprint() {
+        if (docletFingerprint != null) return docletFingerprint;
+
+        String fingerprint = "";
+        try {
+            CodeSource source = ResultCache.class.getProtectionDomain().getCodeSource();
+            if (source != null) {
+                Path location = Path.of(source.getLocation().toURI());
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                List<Path> files;
+                try (Stream<Path> paths = Files.walk(location)) {
+                    files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(file));
+                }
+                fingerprint = HexFormat.of().formatHex(digest.digest());
+            }
+        } catch (IOException | URISyntaxException | NoSuchAlgorithmException | IllegalArgumentException | SecurityException ignored) {
+            // Fall back to just using the cache's version.
+        }
+
+        return docletFingerprint = fingerprint;
+    }
+
+    /**
+     * Look up a run in the cache, marking it as recently used.
+     * <p>
+     * This does not check whether the entry's dependencies have changed. Use {@link Entry#isUpToDate(Environment)} to
+     * check this before using the entry.
+     *
+     * @param key The run's key, as returned by {@link #key(Environment, Collection, List)}.
+     * @return The cache entry, or {@code null} if this run is not cached.
+     */
+    @Nullable
+    public Entry get(@Nonnull String key) {
+        Path file = directory.resolve(key + EXTENSION);
+        ZipFile zip;
+        try {
+            zip = new ZipFile(file.toFile());
+        } catch (IOException e) {
+            // Most likely the file does not exist, but if it is unreadable then it may as well not.
+            return null;
+        }
+
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // If we can't update the time, this entry will just be evicted sooner.
+        }
+
+        return new Entry(zip);
+    }
+
+    /**
+     * Start adding a run's files to the cache. These should be written to the returned {@link Recorder} as they are
+     * generated, and then saved with {@link Recorder#commit(Map, Path)}.
+     *
+     * @param key The run's key, as returned by {@link #key(Environment, Collection, List)}.
+     * @return The recorder to write files to, or {@code null} if the cache could not be written to.
+     */
+    @Nullable
+    public Recorder record(@Nonnull String key) {
+        try {
+            Files.createDirectories(directory);
+
+            // Write to a temporary file first, so other runs never see a partially written entry.
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            try {
+                return new Recorder(directory.resolve(key + EXTENSION), temporary);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+        } catch (IOException ignored) {
+            // The cache is purely an optimisation, so we can carry on without it.
+            return null;
+        }
+    }
+
+    /**
+     * Delete the least recently used entries until the cache is no larger than its maximum size.
+     *
+     * @throws IOException If the cache directory could not be read.
+     */
+    private void evict() throws IOException {
+        List<Candidate> entries = new ArrayList<>();
+        long size = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                Candidate entry;
+                try {
+                    entry = new Candidate(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+                } catch (NoSuchFileException e) {
+                    continue; // Evicted by another run.
+                }
+                entries.add(entry);
+                size += entry.size;
+            }
+        }
+
+        entries.sort(Comparator.comparingLong(x -> x.lastUsed));
+        for (Candidate entry : entries) {
+            if (size <= maxSize) break;
+            Files.deleteIfExists(entry.path);
+            size -= entry.size;
+        }
+    }
+
+    /**
+     * A cached run, returned by {@link #get(String)}.
+     * <p>
+     * This keeps the underlying archive open, so the entry can still be read if another run evicts it.
+     */
+    public static final class Entry implements Closeable {
+        private final ZipFile zip;
+
+        private Entry(ZipFile zip) {
+            this.zip = zip;
+        }
+
+        /**
+         * Check whether every class this run depended on is unchanged.
+         *
+         * @param env The current environment.
+         * @return Whether this entry can be used.
+         */
+        public boolean isUpToDate(@Nonnull Environment env) {
+            try {
+                ZipEntry entry = zip.getEntry(DEPENDENCIES);
+                if (entry == null) return false;
+
+                String contents;
+                try (InputStream stream = zip.getInputStream(entry)) {
+                    contents = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+                }
+
+                for (String line : contents.split("\n")) {
+                    if (line.isEmpty()) continue;
+
+                    int separator = line.indexOf('\t');
+                    if (separator < 0) return false;
+
+                    TypeElement type = env.elements().getTypeElement(line.substring(0, separator));
+                    if (type == null || !fingerprint(env, type).equals(line.substring(separator + 1))) return false;
+                }
+
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Write this run's files to a sink.
+         *
+         * @param env         The environment to report to.
+         * @param sink        The sink to write to.
+         * @param shard       The current shard, or {@code null} if sharding is disabled.
+         * @param symbolIndex The path to write the {@code -symbol-index} to, or {@code null} if not needed.
+         * @return The number of files written.
+         * @throws IOException If the files could not be written.
+         */
+        public int restore(
+            @Nonnull Environment env, @Nonnull OutputSink sink, @Nullable Shard shard, @Nullable Path symbolIndex
+        ) throws IOException {
+            List<String> modules = new ArrayList<>();
+            int files = 0, changed = 0, unchanged = 0;
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                String name = entry.getName();
+                if (name.equals(SYMBOL_INDEX) && symbolIndex != null) {
+                    try (InputStream stream = zip.getInputStream(entry)) {
+                        Files.copy(stream, symbolIndex, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+
+                if (!name.startsWith(FILES)) continue;
+                name = name.substring(FILES.length());
+
+                OutputStream out = sink.open(name);
+                try (out; InputStream stream = zip.getInputStream(entry)) {
+                    stream.transferTo(out);
+                }
+                files++;
+
+                if (!name.endsWith(".lua")) continue;
+                modules.add(name.substring(0, name.length() - 4));
+                if (out instanceof IfChangedOutputStream ifChanged && !ifChanged.isChanged()) {
+                    unchanged++;
+                } else {
+                    changed++;
+                }
+            }
+
+            Emitter.finishOutput(env, sink, modules, shard, changed, unchanged);
+            return files;
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+
+    /**
+     * Adds a run's files to the cache as they are generated, returned by {@link #record(String)}.
+     * <p>
+     * Files are written straight to the entry's archive, so are never all held in memory. Errors writing to the cache
+     * are ignored, and just mean the entry is not saved.
+     */
+    public final class Recorder extends OutputSink.Buffered {
+        private final Path file;
+        private final Path temporary;
+        private final OutputSink.Zip zip;
+        private boolean failed = false;
+        private boolean closed = false;
+
+        private Recorder(Path file, Path temporary) throws IOException {
+            this.file = file;
+            this.temporary = temporary;
+            zip = new OutputSink.Zip(Files.newOutputStream(temporary));
+        }
+
+        @Override
+        protected void write(@Nonnull String name, @Nonnull byte[] contents) {
+            if (failed) return;
+            try (OutputStream out = zip.open(FILES + name)) {
+                out.write(contents);
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+
+        /**
+         * Save this entry to the cache, and then evict old entries if the cache is too large.
+         *
+         * @param dependencies The classes this run depended on, as returned by
+         *                     {@link #dependencies(Environment, Collection)}.
+         * @param symbolIndex  The {@code -symbol-index} written by this run, or {@code null} if none was written.
+         */
+        public synchronized void commit(@Nonnull Map<String, String> dependencies, @Nullable Path symbolIndex) {
+            if (failed || closed) return;
+            try {
+                if (symbolIndex != null) {
+                    try (OutputStream out = zip.open(SYMBOL_INDEX)) {
+                        Files.copy(symbolIndex, out);
+                    }
+                }
+
+                StringBuilder contents = new StringBuilder();
+                for (Map.Entry<String, String> dependency : dependencies.entrySet()) {
+                    contents.append(dependency.getKey()).append('\t').append(dependency.getValue()).append('\n');
+                }
+                try (OutputStream out = zip.open(DEPENDENCIES)) {
+                    out.write(contents.toString().getBytes(StandardCharsets.UTF_8));
+                }
+
+                closed = true;
+                zip.close();
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                evict();
+            } catch (IOException ignored) {
+                // The cache is purely an optimisation, so we can carry on without it.
+            }
+        }
+
+        /**
+         * Discard this entry if it has not been committed.
+         */
+        @Override
+        public synchronized void close() {
+            try {
+                if (!closed) {
+                    closed = true;
+                    zip.close();
+                }
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // Nothing we can do here.
+            }
+        }
+    }
+
+    private static final class Candidate {
+        private final Path path;
+        private final long size;
+        private final long lastUsed;
+
+        private Candidate(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
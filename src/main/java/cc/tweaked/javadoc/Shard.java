@@ -0,0 +1,213 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * One of several processes which generate documentation for a project between them, as set by {@code -shard i/N}.
+ * <p>
+ * Every shard reads the whole project, and so can resolve references to (and inherit methods from) any class. However,
+ * each shard only renders the modules assigned to it. Modules are assigned by the hash of their name, so this is
+ * deterministic across processes and machines.
+ * <p>
+ * Each shard writes a manifest listing the modules it generated. {@link LuaDocMerge} uses these to combine the outputs
+ * of every shard.
+ */
+public final class Shard {
+    private static final String MANIFEST_HEADER = "cct-javadoc shard ";
+
+    /**
+     * A glob matching the name of every shard's manifest.
+     *
+     * @see #manifestName()
+     */
+    public static final String MANIFEST_GLOB = "shard-*-of-*.txt";
+
+    /**
+     * The name of the manifest written by runs which are not sharded. This is a hidden file, as (unlike a shard's
+     * manifest) it is not needed by anything other than the doclet itself.
+     *
+     * @see #writeUnshardedManifest(OutputSink, Collection)
+     */
+    public static final String UNSHARDED_MANIFEST = ".cct-javadoc-manifest";
+
+    private final int index;
+    private final int count;
+
+    public Shard(int index, int count) {
+        if (count <= 0) throw new IllegalArgumentException("Shard count must be positive, got " + count);
+        if (index < 1 || index > count) {
+            throw new IllegalArgumentException("Shard index must be between 1 and " + count + ", got " + index);
+        }
+
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * Parse a shard from a string of the form {@code i/N}, where shards are numbered from 1.
+     *
+     * @param value The string to parse.
+     * @return The parsed shard.
+     * @throws IllegalArgumentException If this is not a valid shard.
+     */
+    @Nonnull
+    public static Shard parse(@Nonnull String value) {
+        int slash = value.indexOf('/');
+        if (slash < 0) throw new IllegalArgumentException("Expected a shard of the form i/N, got " + value);
+        return new Shard(Integer.parseInt(value.substring(0, slash)), Integer.parseInt(value.substring(slash + 1)));
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Whether a module belongs to this shard.
+     *
+     * @param name The module's {@link ClassInfo#name()}.
+     * @return Whether this shard should generate this module.
+     */
+    public boolean contains(@Nonnull String name) {
+        // String.hashCode is specified by the JLS, so is stable across JVMs.
+        return Math.floorMod(name.hashCode(), count) == index - 1;
+    }
+
+    /**
+     * Whether this shard is responsible for work which is not part of any module, such as reporting methods without an
+     * owner.
+     *
+     * @return Whether this is the first shard.
+     */
+    public boolean isFirst() {
+        return index == 1;
+    }
+
+    /**
+     * The name of this shard's manifest file.
+     *
+     * @return The manifest's file name.
+     */
+    @Nonnull
+    public String manifestName() {
+        return "shard-" + index + "-of-" + count + ".txt";
+    }
+
+    /**
+     * Write this shard's manifest.
+     *
+     * @param sink    The sink to write the manifest to.
+     * @param modules The names of every module this shard wrote.
+     * @throws IOException If the manifest could not be written.
+     */
+    public void writeManifest(@Nonnull OutputSink sink, @Nonnull Collection<String> modules) throws IOException {
+        writeManifest(sink, manifestName(), modules);
+    }
+
+    /**
+     * Write the manifest of a run which is not sharded. This is read in the same way as a shard's manifest, as if this
+     * were the only shard.
+     *
+     * @param sink    The sink to write the manifest to.
+     * @param modules The names of every module this run wrote.
+     * @throws IOException If the manifest could not be written.
+     */
+    public static void writeUnshardedManifest(@Nonnull OutputSink sink, @Nonnull Collection<String> modules) throws IOException {
+        new Shard(1, 1).writeManifest(sink, UNSHARDED_MANIFEST, modules);
+    }
+
+    private void writeManifest(OutputSink sink, String name, Collection<String> modules) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(sink.open(name), StandardCharsets.UTF_8))) {
+            writer.write(MANIFEST_HEADER + index + "/" + count + "\n");
+            for (String module : modules) writer.write(module + "\n");
+        }
+    }
+
+    /**
+     * Find every manifest in a directory, including one written by an unsharded run.
+     *
+     * @param directory The directory to search.
+     * @return The paths of every manifest, in sorted order.
+     * @throws IOException If the directory could not be read.
+     */
+    @Nonnull
+    public static List<Path> manifests(@Nonnull Path directory) throws IOException {
+        List<Path> manifests = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, MANIFEST_GLOB)) {
+            for (Path path : paths) manifests.add(path);
+        }
+
+        Path unsharded = directory.resolve(UNSHARDED_MANIFEST);
+        if (Files.exists(unsharded)) manifests.add(unsharded);
+
+        manifests.sort(null);
+        return manifests;
+    }
+
+    /**
+     * A manifest written by a shard.
+     */
+    public static final class Manifest {
+        private final Shard shard;
+        private final List<String> modules;
+
+        private Manifest(Shard shard, List<String> modules) {
+            this.shard = shard;
+            this.modules = modules;
+        }
+
+        /**
+         * Read a manifest written by {@link #writeManifest(OutputSink, Collection)}.
+         *
+         * @param path The manifest to read.
+         * @return The read manifest.
+         * @throws IOException If the manifest could not be read or is malformed.
+         */
+        @Nonnull
+        public static Manifest read(@Nonnull Path path) throws IOException {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).startsWith(MANIFEST_HEADER)) {
+                throw new IOException(path + " is not a shard manifest");
+            }
+
+            Shard shard;
+            try {
+                shard = parse(lines.get(0).substring(MANIFEST_HEADER.length()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(path + " is not a shard manifest: " + e.getMessage());
+            }
+
+            return new Manifest(shard, new ArrayList<>(lines.subList(1, lines.size())));
+        }
+
+        @Nonnull
+        public Shard shard() {
+            return shard;
+        }
+
+        @Nonnull
+        public List<String> modules() {
+            return modules;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A persistent cache of rendered snippets of Lua, shared between runs of the doclet.
+ * <p>
+ * Snippets are stored in a file named after the hash of their key. Keys should include everything which affects how
+ * the snippet is rendered, so entries never need to be invalidated.
+ * <p>
+ * This is just a cache, so any errors reading or writing it are ignored, and the snippet is rendered as normal.
+ */
+public final class SnippetCache {
+    /**
+     * The version of the cache. This should be bumped whenever the doclet's output changes, so we don't reuse any
+     * snippets rendered by an older version.
+     */
+    private static final String VERSION = "1";
+
+    private final Path directory;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public SnippetCache(@Nonnull Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Compute a cache key from a list of strings.
+     *
+     * @param parts The parts to build this key from.
+     * @return The cache key.
+     */
+    @Nonnull
+    public static String key(@Nonnull String... parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        digest.update(VERSION.getBytes(StandardCharsets.UTF_8));
+        for (String part : parts) {
+            // Prefix each part with its length, so that different splits of the same string produce different keys.
+            byte[] bytes = String.valueOf(part).getBytes(StandardCharsets.UTF_8);
+            digest.update((byte) 0);
+            digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(bytes);
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return builder.toString();
+    }
+
+    /**
+     * Look up a snippet in the cache.
+     *
+     * @param key The key of this snippet, as returned by {@link #key(String...)}.
+     * @return The cached snippet, or {@code null} if it is not present.
+     */
+    @Nullable
+    public String get(@Nonnull String key) {
+        try {
+            String result = Files.readString(file(key));
+            hits.incrementAndGet();
+            return result;
+        } catch (IOException e) {
+            // Most likely the file does not exist, but if it is unreadable then it may as well not.
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Add a snippet to the cache.
+     *
+     * @param key   The key of this snippet, as returned by {@link #key(String...)}.
+     * @param value The rendered snippet.
+     */
+    public void put(@Nonnull String key, @Nonnull String value) {
+        Path file = file(key);
+        try {
+            Files.createDirectories(file.getParent());
+
+            // Write to a temporary file first, so other threads (or runs) never see a partially written entry.
+            Path temporary = Files.createTempFile(file.getParent(), key, ".tmp");
+            try {
+                Files.writeString(temporary, value);
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException ignored) {
+            // The cache is purely an optimisation, so we can carry on without it.
+        }
+    }
+
+    public int hits() {
+        return hits.get();
+    }
+
+    public int misses() {
+        return misses.get();
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import com.sun.source.util.TreePath;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Where an element is defined in the source code.
+ *
+ * @see Environment#location(javax.lang.model.element.Element)
+ */
+public final class SourceLocation {
+    private final TreePath path;
+    private final long position;
+    private final long line;
+    private final String file;
+
+    SourceLocation(@Nonnull TreePath path, long position, long line, @Nonnull String file) {
+        this.path = path;
+        this.position = position;
+        this.line = line;
+        this.file = file;
+    }
+
+    /**
+     * The path to this element's declaration.
+     *
+     * @return This element's tree path.
+     */
+    @Nonnull
+    public TreePath path() {
+        return path;
+    }
+
+    /**
+     * The start position of this element, as an offset from the start of the file.
+     *
+     * @return This element's start position.
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * The line this element starts on, counting from 1.
+     *
+     * @return This element's start line.
+     */
+    public long line() {
+        return line;
+    }
+
+    /**
+     * The file this element was defined in, relative to the project root.
+     *
+     * @return The relative path to this file, using {@code /} as a separator.
+     */
+    @Nonnull
+    public String file() {
+        return file;
+    }
+
+    /**
+     * The {@code @source} tag for this element.
+     *
+     * @return The source tag, including a trailing new line.
+     */
+    @Nonnull
+    public String sourceTag() {
+        return "@source " + file + ":" + line + "\n";
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.annotation.Nonnull;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Records how long each phase of generating documentation takes, as well as how long each module and method took to
+ * render.
+ * <p>
+ * CPU time and allocation are measured per-thread. Work done on other threads (such as when rendering with
+ * {@code -threads}) must be wrapped with {@link #worker(Supplier)} to be counted.
+ */
+public final class Timings {
+    /**
+     * The number of modules and methods to include in the list of slowest items.
+     */
+    private static final int SLOWEST = 10;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final List<Phase> phases = new ArrayList<>();
+    private final Map<String, LongAdder> modules = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> methods = new ConcurrentHashMap<>();
+    private volatile Phase current;
+
+    public Timings() {
+        if (threads.isCurrentThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled()) {
+            threads.setThreadCpuTimeEnabled(true);
+        }
+    }
+
+    /**
+     * Start timing a new phase. {@link Phase#end()} should be called once the phase is finished.
+     *
+     * @param name The name of this phase.
+     * @return The started phase.
+     */
+    @Nonnull
+    public Phase phase(@Nonnull String name) {
+        Phase phase = new Phase(name);
+        phases.add(phase);
+        current = phase;
+        return phase;
+    }
+
+    /**
+     * Run some part of the current phase on another thread, adding its CPU time and allocation to the current phase.
+     *
+     * @param function The function to run.
+     * @param <T>      The result of this function.
+     * @return The result of this function.
+     */
+    public <T> T worker(@Nonnull Supplier<T> function) {
+        Phase phase = current;
+        long cpu = cpuTime(), allocated = allocatedBytes();
+        try {
+            return function.get();
+        } finally {
+            if (phase != null) phase.add(cpuTime() - cpu, allocatedBytes() - allocated);
+        }
+    }
+
+    /**
+     * Time how long a module takes to render. This includes rendering all of its methods.
+     *
+     * @param name     The name of the module.
+     * @param function The function which renders this module.
+     */
+    public void module(@Nonnull String name, @Nonnull Runnable function) {
+        time(modules, name, function);
+    }
+
+    /**
+     * Time how long a method takes to render. Methods which are rendered in multiple modules count the total time.
+     *
+     * @param name     The Java name of the method.
+     * @param function The function which renders this method.
+     */
+    public void method(@Nonnull String name, @Nonnull Runnable function) {
+        time(methods, name, function);
+    }
+
+    private static void time(Map<String, LongAdder> times, String name, Runnable function) {
+        long start = System.nanoTime();
+        try {
+            function.run();
+        } finally {
+            times.computeIfAbsent(name, k -> new LongAdder()).add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Print a human-readable summary of these timings.
+     *
+     * @param env The environment to report to.
+     */
+    public void report(@Nonnull Environment env) {
+        StringBuilder out = new StringBuilder("Timings:\n");
+        out.append(String.format("  %-20s %10s %10s %12s%n", "Phase", "Wall (ms)", "CPU (ms)", "Alloc (MB)"));
+        for (Phase phase : phases) {
+            out.append(String.format(
+                "  %-20s %10.1f %10s %12s%n", phase.name, phase.wall / 1e6,
+                phase.cpu() < 0 ? "-" : String.format("%.1f", phase.cpu() / 1e6),
+                phase.allocated() < 0 ? "-" : String.format("%.1f", phase.allocated() / 1e6)
+            ));
+        }
+
+        reportSlowest(out, "Slowest modules", modules);
+        reportSlowest(out, "Slowest methods", methods);
+        env.message(Diagnostic.Kind.NOTE, out.toString().stripTrailing());
+    }
+
+    private static void reportSlowest(StringBuilder out, String title, Map<String, LongAdder> times) {
+        if (times.isEmpty()) return;
+
+        out.append(title).append(":\n");
+        for (Map.Entry<String, Long> entry : slowest(times)) {
+            out.append(String.format("  %10.1f ms  %s%n", entry.getValue() / 1e6, entry.getKey()));
+        }
+    }
+
+    /**
+     * Write these timings as JSON.
+     *
+     * @param path The file to write to.
+     * @throws IOException If the file could not be written.
+     */
+    public void write(@Nonnull Path path) throws IOException {
+        try (JsonWriter out = new JsonWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            out.beginObject();
+
+            out.name("phases").beginArray();
+            for (Phase phase : phases) {
+                out.beginObject()
+                    .name("name").value(phase.name)
+                    .name("wall_ns").value(phase.wall)
+                    .name("cpu_ns").value(phase.cpu())
+                    .name("allocated_bytes").value(phase.allocated())
+                    .endObject();
+            }
+            out.endArray();
+
+            writeSlowest(out, "slowest_modules", modules);
+            writeSlowest(out, "slowest_methods", methods);
+
+            out.endObject();
+        }
+    }
+
+    private static void writeSlowest(JsonWriter out, String name, Map<String, LongAdder> times) throws IOException {
+        out.name(name).beginArray();
+        for (Map.Entry<String, Long> entry : slowest(times)) {
+            out.beginObject().name("name").value(entry.getKey()).name("wall_ns").value(entry.getValue()).endObject();
+        }
+        out.endArray();
+    }
+
+    private static List<Map.Entry<String, Long>> slowest(Map<String, LongAdder> times) {
+        return times.entrySet().stream()
+            .map(x -> Map.entry(x.getKey(), x.getValue().sum()))
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+            .limit(SLOWEST)
+            .collect(Collectors.toList());
+    }
+
+    private long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    private long allocatedBytes() {
+        return threads instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()
+            ? bean.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * A single phase of generating documentation. Phases are timed from when they are created until they are ended.
+     */
+    public final class Phase {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final long startCpu = cpuTime();
+        private final long startAllocated = allocatedBytes();
+        private final LongAdder cpu = new LongAdder();
+        private final LongAdder allocated = new LongAdder();
+        private long wall;
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        private void add(long cpu, long allocated) {
+            this.cpu.add(cpu);
+            this.allocated.add(allocated);
+        }
+
+        private long cpu() {
+            return startCpu < 0 ? -1 : cpu.sum();
+        }
+
+        private long allocated() {
+            return startAllocated < 0 ? -1 : allocated.sum();
+        }
+
+        /**
+         * Finish timing this phase.
+         */
+        public void end() {
+            wall = System.nanoTime() - start;
+            add(cpuTime() - startCpu, allocatedBytes() - startAllocated);
+            if (current == this) current = null;
+        }
+    }
+}
@@ -16,6 +16,7 @@ import javax.lang.model.util.SimpleTypeVisitor8;
 import javax.tools.Diagnostic;
 import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -26,11 +27,47 @@ public class TypeConverter extends SimpleTypeVisitor8<StringBuilder, StringBuild
     private final Environment env;
     private final Element element;
     private final Function<DeclaredType, String> resolve;
+    private final Cache cache;
+    private boolean failed = false;
 
     public TypeConverter(Environment env, Element element, Function<DeclaredType, String> resolve) {
+        this(env, element, resolve, new Cache());
+    }
+
+    /**
+     * Create a new type converter, sharing a cache with other converters.
+     *
+     * @param env     The current environment.
+     * @param element The element whose type we're converting. This is used when reporting errors.
+     * @param resolve The function to convert other types to Lua names. This should be the same for every converter
+     *                sharing this cache.
+     * @param cache   The cache to share.
+     */
+    public TypeConverter(Environment env, Element element, Function<DeclaredType, String> resolve, Cache cache) {
         this.env = env;
         this.element = element;
         this.resolve = resolve;
+        this.cache = cache;
+    }
+
+    /**
+     * Convert a type to its Lua name, reusing a previous result for the same type if possible.
+     * <p>
+     * Types are cached by their string representation, which includes the fully qualified name of every type. Types
+     * which could not be converted are never cached, so that errors are reported for each use.
+     *
+     * @param type The type to convert.
+     * @return The Lua name of this type.
+     */
+    public String convert(TypeMirror type) {
+        String key = type.toString();
+        String rendered = cache.rendered.get(key);
+        if (rendered != null) return rendered;
+
+        failed = false;
+        rendered = visit(type, new StringBuilder()).toString();
+        if (!failed) cache.rendered.put(key, rendered);
+        return rendered;
     }
 
     @Override
@@ -76,15 +113,16 @@ public class TypeConverter extends SimpleTypeVisitor8<StringBuilder, StringBuild
     @Override
     public StringBuilder visitDeclared(DeclaredType t, StringBuilder stringBuilder) {
         TypeElement type = MoreElements.asType(t.asElement());
-        if (is(type, String.class) || is(type, ByteBuffer.class) || is(type.getSuperclass(), Enum.class)) {
+        Category category = cache.categories.computeIfAbsent(type, TypeConverter::classify);
+        if (category == Category.STRING) {
             return stringBuilder.append("string");
-        } else if (is(type, Integer.class) || is(type, Double.class) || is(type, Long.class)) {
+        } else if (category == Category.NUMBER) {
             return stringBuilder.append("number");
-        } else if (is(type, Boolean.class)) {
+        } else if (category == Category.BOOLEAN) {
             return stringBuilder.append("boolean");
-        } else if (is(type, Object.class)) {
+        } else if (category == Category.ANY) {
             return stringBuilder.append("any");
-        } else if (is(type, Map.class) || is(type, "dan200.computercraft.api.lua.LuaTable")) {
+        } else if (category == Category.MAP) {
             TypeMirror key = getTypeArg(t, 0);
             TypeMirror value = getTypeArg(t, 1);
             if (key == null && value == null) return stringBuilder.append("table");
@@ -102,8 +140,7 @@ public class TypeConverter extends SimpleTypeVisitor8<StringBuilder, StringBuild
                 visit(value, stringBuilder);
             }
             return stringBuilder.append(" }");
-        } else if (is(type, List.class) || is(type, Collection.class)) // TODO: Check for subclasses.
-        {
+        } else if (category == Category.LIST) {
             TypeMirror element = getTypeArg(t, 0);
             if (element == null) {
                 return stringBuilder.append("table");
@@ -112,7 +149,7 @@ public class TypeConverter extends SimpleTypeVisitor8<StringBuilder, StringBuild
                 visit(element, stringBuilder);
                 return stringBuilder.append("... }");
             }
-        } else if (is(type, "dan200.computercraft.api.lua.MethodResult")) {
+        } else if (category == Category.VARARGS) {
             return stringBuilder.append("any...");
         } else {
             String resolved = resolve.apply(t);
@@ -120,8 +157,29 @@ public class TypeConverter extends SimpleTypeVisitor8<StringBuilder, StringBuild
         }
     }
 
+    private static Category classify(TypeElement type) {
+        if (is(type, String.class) || is(type, ByteBuffer.class) || is(type.getSuperclass(), Enum.class)) {
+            return Category.STRING;
+        } else if (is(type, Integer.class) || is(type, Double.class) || is(type, Long.class)) {
+            return Category.NUMBER;
+        } else if (is(type, Boolean.class)) {
+            return Category.BOOLEAN;
+        } else if (is(type, Object.class)) {
+            return Category.ANY;
+        } else if (is(type, Map.class) || is(type, "dan200.computercraft.api.lua.LuaTable")) {
+            return Category.MAP;
+        } else if (is(type, List.class) || is(type, Collection.class)) { // TODO: Check for subclasses.
+            return Category.LIST;
+        } else if (is(type, "dan200.computercraft.api.lua.MethodResult")) {
+            return Category.VARARGS;
+        } else {
+            return Category.OTHER;
+        }
+    }
+
     @Override
     protected StringBuilder defaultAction(TypeMirror e, StringBuilder stringBuilder) {
+        failed = true;
         env.message(Diagnostic.Kind.ERROR, "Cannot handle type " + e, element);
         return stringBuilder;
     }
@@ -131,4 +189,27 @@ public class TypeConverter extends SimpleTypeVisitor8<StringBuilder, StringBuild
         TypeMirror arg = ty.getTypeArguments().get(index);
         return arg.getKind() == TypeKind.WILDCARD ? null : arg;
     }
+
+    /**
+     * How a class is converted to a Lua type.
+     */
+    private enum Category {
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        ANY,
+        MAP,
+        LIST,
+        VARARGS,
+        OTHER,
+    }
+
+    /**
+     * Classified classes and converted types, shared between several {@link TypeConverter}s. Like the rest of javac's
+     * model, this is not thread-safe.
+     */
+    public static final class Cache {
+        private final Map<TypeElement, Category> categories = new HashMap<>();
+        private final Map<String, String> rendered = new HashMap<>();
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2020. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package cc.tweaked.javadoc;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the class hierarchy, used to check whether one class extends or implements another.
+ * <p>
+ * Every class is given an id the first time it is seen, along with the set of ids of all its (transitive) supertypes.
+ * This means checking subtypes is a single bit lookup, rather than walking the hierarchy with
+ * {@link javax.lang.model.util.Types#isAssignable(TypeMirror, TypeMirror)} each time.
+ * <p>
+ * Subtyping is checked on erased types, so {@code Foo} is a subtype of {@code Base<T>} when it implements
+ * {@code Base<String>}. Like the rest of javac's model, this is not thread-safe.
+ */
+public final class TypeHierarchy {
+    private final Map<TypeElement, Integer> ids = new HashMap<>();
+    private final List<BitSet> supertypes = new ArrayList<>();
+
+    /**
+     * Determine whether a type extends or implements another one. Every type is considered a subtype of itself.
+     *
+     * @param type   The possible subtype.
+     * @param parent The possible supertype.
+     * @return Whether {@code type} is a subtype of {@code parent}.
+     */
+    public boolean isSubtype(@Nonnull TypeElement type, @Nullable TypeElement parent) {
+        if (parent == null) return false;
+        if (type == parent) return true;
+
+        // If we've never seen the parent, then it cannot be a supertype of anything we've indexed so far.
+        BitSet supers = supertypes.get(index(type));
+        Integer parentId = ids.get(parent);
+        return parentId != null && supers.get(parentId);
+    }
+
+    private int index(TypeElement type) {
+        Integer existing = ids.get(type);
+        if (existing != null) return existing;
+
+        BitSet supers = new BitSet();
+        addSupertype(supers, type.getSuperclass());
+        for (TypeMirror iface : type.getInterfaces()) addSupertype(supers, iface);
+
+        int id = supertypes.size();
+        supers.set(id);
+        supertypes.add(supers);
+        ids.put(type, id);
+        return id;
+    }
+
+    private void addSupertype(BitSet supers, TypeMirror parent) {
+        if (parent.getKind() != TypeKind.DECLARED) return;
+        supers.or(supertypes.get(index((TypeElement) ((DeclaredType) parent).asElement())));
+    }
+}
@@ -0,0 +1,168 @@
+package cc.tweaked.javadoc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CheckTest {
+    private static final String MODULE = """
+        package check;
+
+        import dan200.computercraft.api.lua.IArguments;
+        import dan200.computercraft.api.lua.LuaFunction;
+
+        /**
+         * A module with problems. See {@link #missing}.
+         *
+         * @cc.module checked
+         */
+        public class Module {
+            /**
+             * Takes arbitrary arguments, but does not document them.
+             */
+            @LuaFunction
+            public final void dynamic(IArguments args) {
+            }
+
+            /**
+             * Returns an arbitrary value, but does not document it.
+             */
+            @LuaFunction
+            public final Object[] returns() {
+                return null;
+            }
+        }
+        """;
+
+    private static final String HIDDEN = """
+        package check;
+
+        import dan200.computercraft.api.lua.LuaFunction;
+
+        /**
+         * A hidden module, which is never written. See {@link #missing}.
+         *
+         * @cc.module hidden
+         * @hidden
+         */
+        public class Hidden {
+            /**
+             * Links to a {@link #missing} method.
+             */
+            @LuaFunction
+            public final void method() {
+            }
+        }
+        """;
+
+    private static final String UNOWNED = """
+        package check;
+
+        import dan200.computercraft.api.lua.LuaFunction;
+
+        public class Unowned {
+            /**
+             * This is not part of any module. See {@link #missing}.
+             */
+            @LuaFunction
+            public final Object[] method() {
+                return null;
+            }
+        }
+        """;
+
+    private static final String UNSUPPORTED = """
+        package check;
+
+        import dan200.computercraft.api.lua.LuaFunction;
+
+        /**
+         * A module using tags we cannot convert. {@summary A summary.}
+         *
+         * @author Someone
+         * @cc.module unsupported
+         */
+        public class Unsupported {
+            public static final int VALUE = 1;
+
+            /**
+             * Returns {@value #VALUE}.
+             */
+            @LuaFunction
+            public final int value() {
+                return VALUE;
+            }
+        }
+        """;
+
+    /**
+     * Check {@code -check} reports every problem a normal run does, without writing any files. Hidden modules and
+     * methods which are never written are not rendered, but are still checked by both.
+     */
+    @Test
+    public void reportsEveryProblem() throws IOException {
+        Path root = Files.createTempDirectory("cct_javadoc_check");
+        Path sources = root.resolve("src");
+        Files.createDirectories(sources.resolve("check"));
+        Files.writeString(sources.resolve("check/Module.java"), MODULE);
+        Files.writeString(sources.resolve("check/Hidden.java"), HIDDEN);
+        Files.writeString(sources.resolve("check/Unowned.java"), UNOWNED);
+
+        DocletRunner full = new DocletRunner(sources.toFile(), Files.createDirectories(root.resolve("full")));
+        assertFalse(full.run(), "A normal run should fail");
+
+        Path checkOutput = Files.createDirectories(root.resolve("check"));
+        DocletRunner check = new DocletRunner(sources.toFile(), checkOutput);
+        assertFalse(check.run("-check"), "Checking should fail");
+
+        List<String> fullProblems = full.problems(), checkProblems = check.problems();
+        assertEquals(7, fullProblems.size(), "Expected problems from a normal run: " + fullProblems);
+        assertTrue(fullProblems.stream().anyMatch(x -> x.contains("Hidden.java:")), "Should check hidden modules");
+        assertTrue(fullProblems.stream().anyMatch(x -> x.contains("Unowned.java:")), "Should check unwritten methods");
+
+        assertEquals(fullProblems.size(), checkProblems.size(), "Expected problems from -check: " + checkProblems);
+        for (String problem : fullProblems) {
+            assertTrue(checkProblems.contains(problem), "-check should also report " + problem + ", got " + checkProblems);
+        }
+
+        try (Stream<Path> files = Files.list(checkOutput)) {
+            assertEquals(0L, files.count(), "-check should not write any files");
+        }
+    }
+
+    /**
+     * Tags which cannot be converted are only found when walking the doc comment, so {@code -check} must do that too.
+     */
+    @Test
+    public void reportsUnsupportedTags() throws IOException {
+        Path root = Files.createTempDirectory("cct_javadoc_check");
+        Path sources = root.resolve("src");
+        Files.createDirectories(sources.resolve("check"));
+        Files.writeString(sources.resolve("check/Unsupported.java"), UNSUPPORTED);
+
+        DocletRunner full = new DocletRunner(sources.toFile(), Files.createDirectories(root.resolve("full")));
+        assertFalse(full.run(), "A normal run should fail");
+
+        DocletRunner check = new DocletRunner(sources.toFile(), Files.createDirectories(root.resolve("check")));
+        assertFalse(check.run("-check"), "Checking should fail");
+
+        List<String> fullProblems = full.problems(), checkProblems = check.problems();
+        for (String kind : List.of("AUTHOR", "SUMMARY", "VALUE")) {
+            assertTrue(
+                fullProblems.stream().anyMatch(x -> x.endsWith("Visiting unknown node " + kind)),
+                "A normal run should report " + kind + ", got " + fullProblems
+            );
+        }
+        assertEquals(
+            fullProblems.stream().sorted().collect(Collectors.toList()), checkProblems.stream().sorted().collect(Collectors.toList()),
+            "-check should report the same problems"
+        );
+    }
+}
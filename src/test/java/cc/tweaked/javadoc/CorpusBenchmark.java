@@ -0,0 +1,91 @@
+package cc.tweaked.javadoc;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates a large corpus with {@link CorpusGenerator}, and then times generating documentation for it through
+ * {@link DocletRunner}.
+ * <p>
+ * Usage: {@code CorpusBenchmark [--peripherals N] [--generic N] [--depth N] [--methods N] [--paragraphs N] [--runs N]
+ * [-- doclet options...]}. This can be run with {@code ./gradlew corpusBenchmark --args="..."}.
+ * <p>
+ * Allocation is only measured on the current thread, so is an underestimate when running with {@code -threads}.
+ */
+public class CorpusBenchmark {
+    public static void main(String[] args) throws IOException {
+        int peripherals = 1000, generic = 100, depth = 5, methods = 5, paragraphs = 5, runs = 5;
+        String[] docletOptions = new String[0];
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--")) {
+                docletOptions = Arrays.copyOfRange(args, i + 1, args.length);
+                break;
+            }
+
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+            int value = Integer.parseInt(args[++i]);
+            switch (arg) {
+                case "--peripherals" -> peripherals = value;
+                case "--generic" -> generic = value;
+                case "--depth" -> depth = value;
+                case "--methods" -> methods = value;
+                case "--paragraphs" -> paragraphs = value;
+                case "--runs" -> runs = value;
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        if (runs <= 0) throw new IllegalArgumentException("Must have at least one run");
+
+        Path root = Files.createTempDirectory("cct_javadoc_corpus");
+        CorpusGenerator generator = new CorpusGenerator(peripherals, generic, depth, methods, paragraphs);
+        generator.generate(root);
+        System.out.printf(
+            "Generated %d modules and %d methods in %s%n", generator.moduleCount(), generator.methodCount(), root
+        );
+
+        DocletRunner runner = new DocletRunner(root.toFile());
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) heap.add(pool);
+        }
+
+        // The first run warms up the JVM, so is not included in the results.
+        System.out.println("run\twall_ms\tpeak_heap_mb\talloc_mb\talloc_kb_per_module\talloc_kb_per_method");
+        long[] times = new long[runs];
+        for (int run = 0; run <= runs; run++) {
+            System.gc();
+            for (MemoryPoolMXBean pool : heap) pool.resetPeakUsage();
+
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            runner.generate(docletOptions);
+            long elapsed = System.nanoTime() - start;
+            allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+            // This sums the peak of each pool, so may be slightly larger than the true peak.
+            long peak = 0;
+            for (MemoryPoolMXBean pool : heap) peak += pool.getPeakUsage().getUsed();
+
+            System.out.printf(
+                "%s\t%d\t%.1f\t%.1f\t%.1f\t%.1f%n",
+                run == 0 ? "warmup" : Integer.toString(run), elapsed / 1_000_000, peak / 1e6, allocated / 1e6,
+                allocated / 1e3 / generator.moduleCount(), allocated / 1e3 / generator.methodCount()
+            );
+            if (run > 0) times[run - 1] = elapsed;
+        }
+
+        Arrays.sort(times);
+        System.out.printf("Median wall time: %d ms%n", times[runs / 2] / 1_000_000);
+    }
+}
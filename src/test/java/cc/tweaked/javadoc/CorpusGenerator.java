@@ -0,0 +1,229 @@
+package cc.tweaked.javadoc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates a large synthetic corpus of documented classes, to find scaling problems which our small test files never
+ * show.
+ * <p>
+ * The corpus contains:
+ * <ul>
+ * <li>Peripherals at the bottom of a chain of {@code depth} classes, each defining several methods.</li>
+ * <li>A method on each level which overrides its parent and uses {@code {@inheritDoc}}.</li>
+ * <li>Generic sources with static methods.</li>
+ * <li>Large doc comments, with lists, code blocks and links to methods within the same and other modules.</li>
+ * </ul>
+ */
+public class CorpusGenerator {
+    private final int peripherals;
+    private final int genericSources;
+    private final int depth;
+    private final int methods;
+    private final int paragraphs;
+
+    private int moduleCount;
+    private int methodCount;
+
+    /**
+     * Create a new corpus generator.
+     *
+     * @param peripherals    The number of peripherals to generate.
+     * @param genericSources The number of generic sources to generate.
+     * @param depth          The number of classes in each peripheral's inheritance chain.
+     * @param methods        The number of methods on each class.
+     * @param paragraphs     The number of paragraphs in each method's doc comment.
+     */
+    public CorpusGenerator(int peripherals, int genericSources, int depth, int methods, int paragraphs) {
+        this.peripherals = peripherals;
+        this.genericSources = genericSources;
+        this.depth = depth;
+        this.methods = methods;
+        this.paragraphs = paragraphs;
+    }
+
+    /**
+     * Write this corpus to a directory.
+     *
+     * @param root The source root to write to.
+     * @throws IOException If the files could not be written.
+     */
+    public void generate(Path root) throws IOException {
+        Path dir = root.resolve("corpus");
+        Files.createDirectories(dir);
+        moduleCount = 0;
+        methodCount = 0;
+
+        Files.writeString(dir.resolve("Target.java"), "package corpus;\n\npublic class Target {\n}\n");
+
+        for (int peripheral = 0; peripheral < peripherals; peripheral++) {
+            for (int level = 0; level < depth; level++) {
+                String name = chainName(peripheral, level);
+                Files.writeString(dir.resolve(name + ".java"), chainClass(peripheral, level));
+            }
+        }
+
+        for (int source = 0; source < genericSources; source++) {
+            Files.writeString(dir.resolve("Generic" + source + ".java"), genericSource(source));
+        }
+    }
+
+    /**
+     * The number of {@code @cc.module} classes in the last generated corpus.
+     *
+     * @return The number of modules.
+     */
+    public int moduleCount() {
+        return moduleCount;
+    }
+
+    /**
+     * The number of {@code @LuaFunction} methods in the last generated corpus.
+     *
+     * @return The number of methods.
+     */
+    public int methodCount() {
+        return methodCount;
+    }
+
+    private String chainClass(int peripheral, int level) {
+        String name = chainName(peripheral, level);
+        boolean isModule = level == depth - 1;
+
+        StringBuilder out = new StringBuilder();
+        out.append("package corpus;\n\n")
+            .append("import dan200.computercraft.api.lua.LuaFunction;\n")
+            .append("import dan200.computercraft.api.peripheral.IPeripheral;\n\n")
+            .append("import javax.annotation.Nullable;\n")
+            .append("import java.util.List;\n")
+            .append("import java.util.Map;\n")
+            .append("import java.util.Optional;\n\n");
+
+        out.append("/**\n * Level ").append(level).append(" of peripheral ").append(peripheral).append(".\n");
+        if (isModule) {
+            moduleCount++;
+            out.append(" *\n * @cc.module peripheral_").append(peripheral).append("\n");
+        }
+        out.append(" */\n");
+        out.append("public abstract class ").append(name)
+            .append(level == 0 ? " implements IPeripheral" : " extends " + chainName(peripheral, level - 1)).append(" {\n");
+
+        for (int method = 0; method < methods; method++) {
+            String methodName = "level" + level + "Method" + method;
+            docComment(out, peripheral, level, method);
+            out.append("    @LuaFunction\n");
+            if (method % 3 == 1) out.append("    @Nullable\n");
+            out.append("    public final ").append(returnType(method)).append(" ").append(methodName)
+                .append("(int count, String name, Optional<Map<String, List<Integer>>> options) {\n")
+                .append("        return null;\n    }\n\n");
+            methodCount++;
+        }
+
+        // Every level overrides describe, inheriting the doc comment of the previous level.
+        if (level == 0) {
+            out.append("""
+                    /**
+                     * Describe this peripheral.
+                     *
+                     * @param verbose Whether to include extra detail.
+                     * @return A description of this peripheral.
+                     */
+                    @LuaFunction
+                    public String describe(boolean verbose) {
+                        return "";
+                    }
+                """);
+        } else {
+            out.append("""
+                    /**
+                     * {@inheritDoc}
+                     */
+                    @Override
+                    @LuaFunction
+                    public String describe(boolean verbose) {
+                        return "";
+                    }
+                """);
+        }
+        methodCount++;
+
+        return out.append("}\n").toString();
+    }
+
+    private void docComment(StringBuilder out, int peripheral, int level, int method) {
+        out.append("    /**\n");
+        for (int paragraph = 0; paragraph < paragraphs; paragraph++) {
+            if (paragraph > 0) out.append("     * <p>\n");
+            out.append("     * Paragraph ").append(paragraph).append(" of method ").append(method)
+                .append(" on level ").append(level).append(". This uses {@code inline code}, {@literal nil} and\n")
+                .append("     * links to {@link #level").append(level).append("Method").append((method + 1) % methods)
+                .append("} and {@link #describe}.\n");
+        }
+
+        // Link to a method in the previous peripheral's module.
+        if (peripheral > 0) {
+            out.append("     * <p>\n     * See also {@link ").append(chainName(peripheral - 1, depth - 1))
+                .append("#describe the previous peripheral}.\n");
+        }
+
+        out.append("""
+                 * <ul>
+                 * <li>A list item which
+                 * spans several lines.</li>
+                 * <li>Another list item.</li>
+                 * </ul>
+                 *
+                 * <pre>{@code
+                 * local result = peripheral.call("left", "describe", true)
+                 * print(result)
+                 * }</pre>
+                 *
+                 * @param count The number of things.
+                 * @param name The name of the thing.
+                 * @param options Additional options.
+                 * @return The result of this method.
+                 * @cc.usage Call this method.
+                 */
+            """);
+    }
+
+    private static String returnType(int method) {
+        return switch (method % 4) {
+            case 0 -> "String";
+            case 1 -> "Map<String, List<Integer>>";
+            case 2 -> "List<Map<String, Double>>";
+            default -> "Boolean";
+        };
+    }
+
+    private String genericSource(int source) {
+        moduleCount++;
+
+        StringBuilder out = new StringBuilder();
+        out.append("package corpus;\n\n")
+            .append("import dan200.computercraft.api.lua.GenericSource;\n")
+            .append("import dan200.computercraft.api.lua.LuaFunction;\n\n")
+            .append("/**\n * Generic source ").append(source).append(".\n *\n * @cc.module generic_").append(source)
+            .append("\n */\n")
+            .append("public class Generic").append(source).append(" implements GenericSource {\n")
+            .append("    @Override\n    public String id() {\n        return \"corpus:generic_").append(source)
+            .append("\";\n    }\n\n");
+
+        for (int method = 0; method < methods; method++) {
+            out.append("    /**\n     * Generic method ").append(method).append(", see {@link #method")
+                .append((method + 1) % methods).append("}.\n     *\n")
+                .append("     * @param target The target.\n     * @param value The value.\n")
+                .append("     * @return The value.\n     */\n")
+                .append("    @LuaFunction\n    public static int method").append(method)
+                .append("(Target target, int value) {\n        return value;\n    }\n\n");
+            methodCount++;
+        }
+
+        return out.append("}\n").toString();
+    }
+
+    private static String chainName(int peripheral, int level) {
+        return "Peripheral" + peripheral + "Level" + level;
+    }
+}
@@ -0,0 +1,104 @@
+package cc.tweaked.javadoc;
+
+import org.junit.jupiter.api.Test;
+
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiffTest {
+    private static final Path GOLDEN = Path.of("src/test/resources");
+
+    @Test
+    public void identical() throws IOException {
+        Path existing = copyGoldens();
+        DocletRunner runner = DocletRunner.toDirectory();
+        Map<String, byte[]> before = files(existing);
+
+        assertTrue(runner.run("-diff", existing.toString()), "Diffing identical output should succeed");
+        assertEquals(List.of("0 modules added, 0 changed, 0 removed."), notes(runner));
+
+        assertUnchanged(before, existing);
+        assertEquals(Map.of(), files(runner.output()), "Diffing should not write any files");
+    }
+
+    @Test
+    public void changedMissingAndStale() throws IOException {
+        Path existing = copyGoldens();
+        Files.writeString(existing.resolve("basic.lua"), "-- Changed\n", StandardOpenOption.APPEND);
+        Files.delete(existing.resolve("foo.lua"));
+        Files.writeString(existing.resolve("removed.lua"), "-- Removed\n");
+        Map<String, byte[]> before = files(existing);
+
+        DocletRunner runner = DocletRunner.toDirectory();
+        assertFalse(runner.run("-diff", existing.toString()), "Diffing changed output should fail");
+        assertEquals(List.of(
+            "Added module foo",
+            "Changed module basic",
+            "Removed module removed",
+            "1 modules added, 1 changed, 1 removed."
+        ), notes(runner));
+        assertEquals(1, runner.problems().size(), "Expected a single error, got " + runner.problems());
+        assertTrue(runner.problems().get(0).endsWith("Generated documentation differs from " + existing), "Unexpected error " + runner.problems());
+
+        assertUnchanged(before, existing);
+        assertEquals(Map.of(), files(runner.output()), "Diffing should not write any files");
+    }
+
+    /**
+     * Scripts rely on the exit code to tell whether anything changed, so check it from a separate process.
+     */
+    @Test
+    public void exitCode() throws IOException {
+        Path existing = copyGoldens();
+        assertEquals(0, DocletRunner.toDirectory().runProcess("-quiet", "-diff", existing.toString()), "Identical output should succeed");
+
+        Files.writeString(existing.resolve("basic.lua"), "-- Changed\n", StandardOpenOption.APPEND);
+        assertTrue(DocletRunner.toDirectory().runProcess("-quiet", "-diff", existing.toString()) != 0, "Changed output should fail");
+    }
+
+    private static Path copyGoldens() throws IOException {
+        Path directory = Files.createTempDirectory("cct_javadoc_diff");
+        try (Stream<Path> files = Files.list(GOLDEN)) {
+            for (Path file : (Iterable<Path>) files.filter(x -> x.getFileName().toString().endsWith(".lua"))::iterator) {
+                Files.copy(file, directory.resolve(file.getFileName()), StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+        return directory;
+    }
+
+    private static Map<String, byte[]> files(Path directory) throws IOException {
+        Map<String, byte[]> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) files.put(path.getFileName().toString(), Files.readAllBytes(path));
+        }
+        return files;
+    }
+
+    private static void assertUnchanged(Map<String, byte[]> before, Path directory) throws IOException {
+        Map<String, byte[]> after = files(directory);
+        assertEquals(before.keySet(), after.keySet(), "Diffing should not add or remove files");
+        for (Map.Entry<String, byte[]> file : before.entrySet()) {
+            assertArrayEquals(file.getValue(), after.get(file.getKey()), "Diffing should not change " + file.getKey());
+        }
+    }
+
+    private static List<String> notes(DocletRunner runner) {
+        return runner.diagnostics().stream()
+            .filter(x -> x.getKind() == Diagnostic.Kind.NOTE)
+            .map(x -> x.getMessage(Locale.ROOT))
+            .filter(x -> !x.matches("\\d+ errors?")) // javadoc's own summary.
+            .collect(Collectors.toList());
+    }
+}
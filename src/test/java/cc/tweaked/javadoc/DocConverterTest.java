@@ -0,0 +1,99 @@
+package cc.tweaked.javadoc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocConverterTest {
+    @Test
+    public void singleLine() {
+        assertEquals(" Hello ", emit(" Hello ", false), "Single lines are written as-is");
+        assertEquals(" Hello ", emit(" Hello ", true), "Single lines are written as-is");
+        assertEquals("", emit("", false));
+    }
+
+    @Test
+    public void indentsLaterLines() {
+        assertEquals("First\n  Second\n\n  Third", emit("First\n Second\n\n Third", false));
+    }
+
+    @Test
+    public void stripsOneLeadingSpace() {
+        assertEquals(" First\n    Second", emit(" First\n   Second", false), "Only one space is stripped from later lines");
+        assertEquals("First\n  Second", emit(" First\n Second", true), "The first line is stripped when asked");
+        assertEquals("\tFirst\n  \tSecond", emit("\tFirst\n\tSecond", true), "Only spaces are stripped");
+    }
+
+    @Test
+    public void dropsTrailingBlankLines() {
+        assertEquals("First\n  Second", emit("First\n Second\n\n\n", false));
+        assertEquals("First\n", emit("First\n \n", false), "Lines containing spaces are not blank");
+        assertEquals("", emit("\n\n", false));
+    }
+
+    @Test
+    public void keepsCarriageReturns() {
+        assertEquals("First\r\n  Second\r", emit("First\r\n Second\r\n", false));
+        assertEquals("First\r\n  \r", emit("First\r\n\r\n", false), "Lines containing only \\r are not blank");
+    }
+
+    @Test
+    public void emitsRanges() {
+        String body = "xx First\n Second\nyy";
+        StringWriter writer = new StringWriter();
+        try (PrintWriter out = new PrintWriter(writer)) {
+            DocConverter.emitText(body, 2, body.length() - 2, "  ", out, true);
+        }
+        assertEquals("First\n  Second", writer.toString());
+    }
+
+    /**
+     * {@link DocConverter#emitText(String, int, int, String, PrintWriter, boolean)} should behave exactly like the
+     * original implementation, which split the text into lines.
+     */
+    @Test
+    public void matchesSplit() {
+        Random random = new Random(0);
+        char[] alphabet = { ' ', ' ', '\n', '\r', '\t', 'a' };
+        for (int i = 0; i < 100_000; i++) {
+            char[] chars = new char[random.nextInt(12)];
+            for (int j = 0; j < chars.length; j++) chars[j] = alphabet[random.nextInt(alphabet.length)];
+            String body = new String(chars);
+
+            for (boolean stripFirst : new boolean[]{ false, true }) {
+                assertEquals(split(body, stripFirst), emit(body, stripFirst), "Different output for \"" + body.replace("\n", "\\n").replace("\r", "\\r") + "\"");
+            }
+        }
+    }
+
+    private static String emit(String body, boolean stripFirst) {
+        StringWriter writer = new StringWriter();
+        try (PrintWriter out = new PrintWriter(writer)) {
+            DocConverter.emitText(body, 0, body.length(), "  ", out, stripFirst);
+        }
+        return writer.toString();
+    }
+
+    private static String split(String body, boolean stripFirst) {
+        if (body.indexOf('\n') < 0) return body;
+
+        StringBuilder out = new StringBuilder();
+        String[] lines = body.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if ((i > 0 || stripFirst) && line.startsWith(" ")) line = line.substring(1);
+
+            if (i > 0) {
+                out.append("\n");
+                if (!line.isEmpty()) out.append("  ");
+            }
+
+            out.append(line);
+        }
+        return out.toString();
+    }
+}
@@ -4,66 +4,339 @@ import javax.tools.*;
 import javax.tools.DocumentationTool.Location;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class DocletRunner {
     private static final File INPUT = new File("src/test/java").getAbsoluteFile();
     private static final Path GOLDEN = new File("src/test/resources").toPath();
 
+    private final File input;
     private final Path output;
+    private final List<File> sourcePath = new ArrayList<>();
+    private Map<String, byte[]> files;
+    private List<Diagnostic<? extends JavaFileObject>> diagnostics = List.of();
 
-    public DocletRunner() throws IOException {
-        output = Files.createTempDirectory("cct_javadoc");
+    /**
+     * Create a runner for the test files, which keeps its output in memory.
+     */
+    public DocletRunner() {
+        input = INPUT;
+        output = null;
     }
 
-    public void generate() throws IOException {
+    /**
+     * Create a runner which writes its output to a temporary directory, as a normal run would.
+     *
+     * @param input The directory of sources to document.
+     * @throws IOException If the output directory could not be created.
+     */
+    public DocletRunner(File input) throws IOException {
+        this(input, Files.createTempDirectory("cct_javadoc"));
+    }
+
+    /**
+     * Create a runner which writes its output to a specific directory or {@code .zip} archive.
+     *
+     * @param input  The directory of sources to document.
+     * @param output The directory or archive to write to.
+     */
+    public DocletRunner(File input, Path output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    /**
+     * Add additional directories to the source path. Unlike the input directory, these are not documented, but may be
+     * read (for instance, to find an inherited doc comment).
+     *
+     * @param directories The directories to add.
+     * @return This runner, for chaining.
+     */
+    public DocletRunner withSourcePath(File... directories) {
+        sourcePath.addAll(Arrays.asList(directories));
+        return this;
+    }
+
+    /**
+     * Create a runner for the test files, which writes its output to a temporary directory.
+     *
+     * @return The new runner.
+     * @throws IOException If the output directory could not be created.
+     */
+    public static DocletRunner toDirectory() throws IOException {
+        return new DocletRunner(INPUT);
+    }
+
+    /**
+     * Create a runner for the test files, which writes its output to a zip archive in a temporary directory.
+     *
+     * @return The new runner.
+     * @throws IOException If the output directory could not be created.
+     */
+    public static DocletRunner toZip() throws IOException {
+        return new DocletRunner(INPUT, Files.createTempDirectory("cct_javadoc").resolve("docs.zip"));
+    }
+
+    public void generate(String... extraOptions) throws IOException {
+        if (!run(extraOptions)) {
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) System.err.println(diagnostic);
+            throw new IllegalStateException("Generation failed (see above)");
+        }
+    }
+
+    /**
+     * Run the doclet, without failing if it reports any errors.
+     *
+     * @param extraOptions Additional options to pass to the doclet.
+     * @return Whether the doclet succeeded.
+     * @throws IOException If the sources or output could not be read.
+     */
+    public boolean run(String... extraOptions) throws IOException {
         DocumentationTool tool = ToolProvider.getSystemDocumentationTool();
         DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
         StandardJavaFileManager fm = tool.getStandardFileManager(collector, Locale.ROOT, StandardCharsets.UTF_8);
 
-        fm.setLocationFromPaths(Location.DOCUMENTATION_OUTPUT, Collections.singletonList(output));
-        fm.setLocation(StandardLocation.SOURCE_PATH, Collections.singletonList(INPUT));
+        if (output != null && Files.isDirectory(output)) {
+            fm.setLocationFromPaths(Location.DOCUMENTATION_OUTPUT, Collections.singletonList(output));
+        }
+        List<File> sources = new ArrayList<>();
+        sources.add(input);
+        sources.addAll(sourcePath);
+        fm.setLocation(StandardLocation.SOURCE_PATH, sources);
+
+        Iterable<? extends JavaFileObject> files = fm.getJavaFileObjectsFromPaths(sources());
 
-        Iterable<? extends JavaFileObject> files = fm.getJavaFileObjectsFromPaths(
-            Files.walk(INPUT.toPath())
-                .filter(Files::isRegularFile)
-                .collect(Collectors.toList())
-        );
+        List<String> options = new ArrayList<>();
+        if (output != null) options.addAll(List.of("-d", output.toString()));
+        options.addAll(Arrays.asList(extraOptions));
 
-        List<String> options = Arrays.asList("-d", output.toString());
-        DocumentationTool.DocumentationTask task = tool.getTask(null, fm, collector, LuaDoclet.class, options, files);
-        Boolean ok = task.call();
+        Boolean ok;
+        if (output == null) {
+            OutputSink.Memory memory = new OutputSink.Memory();
+            MemoryDoclet.sink = memory;
+            try {
+                ok = tool.getTask(null, fm, collector, MemoryDoclet.class, options, files).call();
+            } finally {
+                MemoryDoclet.sink = null;
+            }
+            this.files = memory.files();
+        } else {
+            ok = tool.getTask(null, fm, collector, LuaDoclet.class, options, files).call();
+            if (isZip(output) && Files.exists(output)) this.files = readZip(output);
+        }
+
+        diagnostics = collector.getDiagnostics();
+
+        return ok != null && ok;
+    }
+
+    /**
+     * Get the diagnostics reported by the last {@link #run(String...)}.
+     *
+     * @return The reported diagnostics.
+     */
+    public List<Diagnostic<? extends JavaFileObject>> diagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Get the errors and warnings reported by the last {@link #run(String...)}, formatted as strings.
+     *
+     * @return The reported problems.
+     */
+    public List<String> problems() {
+        return diagnostics.stream()
+            .filter(x -> x.getKind() != Diagnostic.Kind.NOTE && x.getKind() != Diagnostic.Kind.OTHER)
+            .map(x -> x.getKind() + " " + (x.getSource() == null ? "" : x.getSource().getName() + ":" + x.getLineNumber()) + " " + x.getMessage(Locale.ROOT))
+            .collect(Collectors.toList());
+    }
 
-        for (Diagnostic<? extends JavaFileObject> diagnostic : collector.getDiagnostics()) {
-            System.err.println(diagnostic.toString());
+    /**
+     * Get the directory or archive the doclet writes to.
+     *
+     * @return The output path, or {@code null} if files are written to memory.
+     */
+    public Path output() {
+        return output;
+    }
+
+    private List<Path> sources() throws IOException {
+        try (var paths = Files.walk(input.toPath())) {
+            return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Run the {@code javadoc} tool in a separate process with {@code -d -}, reading the generated files from the tar
+     * archive it writes to standard output.
+     * <p>
+     * As javadoc's own progress messages are left enabled, this also checks that nothing else is printed to stdout.
+     *
+     * @param extraOptions Additional options to pass to the doclet.
+     * @throws IOException If the process could not be run, or its output is not a valid tar archive.
+     */
+    public void generateToStdout(String... extraOptions) throws IOException {
+        List<String> options = new ArrayList<>(List.of("-d", "-"));
+        options.addAll(Arrays.asList(extraOptions));
+
+        Process process = start(options).start();
+        byte[] stdout;
+        try (InputStream stream = process.getInputStream()) {
+            stdout = stream.readAllBytes();
         }
 
-        if (ok == null || !ok) throw new IllegalStateException("Generation failed (see above)");
+        int exitCode = waitFor(process);
+        if (exitCode != 0) throw new IllegalStateException("Generation failed with exit code " + exitCode);
+
+        files = readTar(stdout);
+    }
+
+    /**
+     * Run the {@code javadoc} tool in a separate process, writing to this runner's output directory.
+     *
+     * @param extraOptions Additional options to pass to the doclet.
+     * @return The process's exit code.
+     * @throws IOException If the process could not be run.
+     */
+    public int runProcess(String... extraOptions) throws IOException {
+        List<String> options = new ArrayList<>(List.of("-d", output.toString()));
+        options.addAll(Arrays.asList(extraOptions));
+        return waitFor(start(options).redirectOutput(ProcessBuilder.Redirect.INHERIT).start());
+    }
+
+    private ProcessBuilder start(List<String> options) throws IOException {
+        String classpath = System.getProperty("java.class.path");
+        StringBuilder sources = new StringBuilder(input.toString());
+        for (File directory : sourcePath) sources.append(File.pathSeparator).append(directory);
+
+        List<String> command = new ArrayList<>(List.of(
+            Path.of(System.getProperty("java.home"), "bin", "javadoc").toString(),
+            "-docletpath", classpath, "-doclet", LuaDoclet.class.getName(),
+            "-cp", classpath, "-sourcepath", sources.toString()
+        ));
+        command.addAll(options);
+        for (Path source : sources()) command.add(source.toString());
+
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT);
+    }
+
+    private static int waitFor(Process process) throws IOException {
+        try {
+            return process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for javadoc", e);
+        }
+    }
+
+    /**
+     * Read a tar archive, checking it is well-formed and contains nothing but regular files.
+     *
+     * @param archive The archive to read.
+     * @return The files in the archive.
+     */
+    private static Map<String, byte[]> readTar(byte[] archive) {
+        Map<String, byte[]> files = new TreeMap<>();
+        assertEquals(0, archive.length % 512, "Archive should consist of whole blocks");
+
+        int offset = 0;
+        while (true) {
+            assertTrue(offset + 1024 <= archive.length, "Archive should end with two empty blocks");
+            if (Arrays.equals(archive, offset, offset + 1024, new byte[1024], 0, 1024)) break;
+
+            String name = field(archive, offset, 100);
+            assertEquals("ustar", field(archive, offset + 257, 6), "Expected a ustar header for " + name);
+            assertEquals((byte) '0', archive[offset + 156], "Expected a regular file for " + name);
+
+            int checksum = 0;
+            for (int i = 0; i < 512; i++) checksum += i >= 148 && i < 156 ? ' ' : archive[offset + i] & 0xFF;
+            assertEquals(checksum, Integer.parseInt(field(archive, offset + 148, 8).trim(), 8), "Invalid checksum for " + name);
+
+            int size = Integer.parseInt(field(archive, offset + 124, 12), 8);
+            offset += 512;
+            files.put(name, Arrays.copyOfRange(archive, offset, offset + size));
+            offset += (size + 511) / 512 * 512;
+        }
+
+        assertEquals(archive.length, offset + 1024, "Expected nothing after the end of the archive");
+        return files;
+    }
+
+    private static boolean isZip(Path path) {
+        return path.getFileName().toString().endsWith(".zip");
+    }
+
+    private static Map<String, byte[]> readZip(Path archive) throws IOException {
+        Map<String, byte[]> files = new TreeMap<>();
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) files.put(entry.getName(), zip.readAllBytes());
+        }
+        return files;
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) end++;
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
     }
 
     public void compare(String name) throws IOException {
         assertEquals(
             read(GOLDEN.resolve(name)),
-            read(output.resolve(name)),
+            readOutput(name),
             "Test outputs should be the same."
         );
     }
 
     public void update(String name) throws IOException {
-        Files.copy(output.resolve(name), GOLDEN.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        if (files != null) {
+            Files.writeString(GOLDEN.resolve(name), readOutput(name));
+        } else {
+            Files.copy(output.resolve(name), GOLDEN.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public String readOutput(String name) throws IOException {
+        if (files == null) return read(output.resolve(name));
+
+        byte[] contents = files.get(name);
+        if (contents == null) throw new NoSuchFileException(name);
+        return new String(contents, StandardCharsets.UTF_8);
     }
 
     public static String read(Path file) throws IOException {
         return Files.readString(file);
     }
+
+    /**
+     * A doclet which writes to an in-memory sink, rather than to disk. The documentation tool constructs the doclet
+     * itself, so the sink is passed in with a static field.
+     */
+    public static class MemoryDoclet extends LuaDoclet {
+        private static OutputSink.Memory sink;
+
+        @Override
+        protected OutputSink openSink() {
+            return sink;
+        }
+    }
 }
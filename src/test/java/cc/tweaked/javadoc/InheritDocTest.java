@@ -0,0 +1,119 @@
+package cc.tweaked.javadoc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InheritDocTest {
+    private static final String PARENT = """
+        package inherit;
+
+        public class Parent {
+            /**
+             * Add two numbers together. See {@link #missing}.
+             *
+             * @param x The first number to add.
+             * @param y The second number to add.
+             * @return The result of adding two numbers.
+             */
+            public int add(int x, int y) {
+                return 0;
+            }
+        }
+        """;
+
+    private static String middle(String name) {
+        return """
+            package inherit;
+
+            import dan200.computercraft.api.lua.LuaFunction;
+
+            public class %s extends Parent {
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                @LuaFunction
+                public int add(int x, int y) {
+                    return x + y;
+                }
+            }
+            """.formatted(name);
+    }
+
+    private static String module(String module, String parent) {
+        return """
+            package inherit;
+
+            /**
+             * @cc.module %1$s
+             */
+            public class %1$s extends %2$s {
+            }
+            """.formatted(module, parent);
+    }
+
+    /**
+     * Inherited comments are cached, but any problems in them should still be reported by every shard which inherits
+     * them, even if the comment was first inherited by a method which only reports problems in another shard.
+     * <p>
+     * None of the classes inheriting the comment are modules, so they all share a resolver, and so the same cached
+     * comment. Each {@code Shared} class is inherited by a module in both shards, and so is only checked by one of them.
+     * Each {@code Local} class is inherited by a single module, and so is always checked by that module's shard.
+     */
+    @Test
+    public void reportsErrorsInInheritedComments() throws IOException {
+        Path root = Files.createTempDirectory("cct_javadoc_inherit");
+        Path sources = root.resolve("src");
+        Files.createDirectories(sources.resolve("inherit"));
+        Files.writeString(sources.resolve("inherit/Parent.java"), PARENT);
+
+        List<Iterator<String>> names = List.of(moduleNames(Shard.parse("1/2")), moduleNames(Shard.parse("2/2")));
+        for (int i = 1; i <= 12; i++) {
+            String shared = "Shared" + i;
+            Files.writeString(sources.resolve("inherit/" + shared + ".java"), middle(shared));
+            for (Iterator<String> shard : names) addModule(sources, shard.next(), shared);
+        }
+        for (int i = 1; i <= 2; i++) {
+            String local = "Local" + i;
+            Files.writeString(sources.resolve("inherit/" + local + ".java"), middle(local));
+            addModule(sources, names.get(i - 1).next(), local);
+        }
+
+        DocletRunner runner = new DocletRunner(sources.toFile(), Files.createDirectories(root.resolve("out")));
+        assertFalse(runner.run(), "Broken references should fail the run");
+        assertTrue(hasBrokenLink(runner.problems()), "Expected a broken reference, got " + runner.problems());
+
+        // Methods are resolved in hash order, which differs between runs. We check each shard several times, so that
+        // (at least in some runs) the comment is first inherited by a method which is resolved quietly.
+        for (int attempt = 0; attempt < 5; attempt++) {
+            for (int i = 1; i <= 2; i++) {
+                DocletRunner sharded = new DocletRunner(sources.toFile(), Files.createDirectories(root.resolve("shard" + i)));
+                assertFalse(sharded.run("-shard", i + "/2"), "Broken references should fail shard " + i);
+                assertTrue(hasBrokenLink(sharded.problems()), "Expected a broken reference in shard " + i + ", got " + sharded.problems());
+            }
+        }
+    }
+
+    private static void addModule(Path sources, String module, String parent) throws IOException {
+        Files.writeString(sources.resolve("inherit/" + module + ".java"), module(module, parent));
+    }
+
+    /**
+     * An infinite sequence of module names which belong to the given shard.
+     */
+    private static Iterator<String> moduleNames(Shard shard) {
+        return IntStream.iterate(0, i -> i + 1).mapToObj(i -> "Module" + i).filter(shard::contains).iterator();
+    }
+
+    private static boolean hasBrokenLink(List<String> problems) {
+        return problems.stream().anyMatch(x -> x.contains("Parent.java:5") && x.contains("Cannot resolve reference."));
+    }
+}
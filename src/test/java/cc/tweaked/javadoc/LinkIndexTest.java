@@ -0,0 +1,129 @@
+package cc.tweaked.javadoc;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinkIndexTest {
+    private static final String LIBRARY = """
+        package lib;
+
+        import dan200.computercraft.api.lua.ILuaAPI;
+        import dan200.computercraft.api.lua.LuaFunction;
+
+        /**
+         * @cc.module lib
+         */
+        public class Lib implements ILuaAPI {
+            /**
+             * Pick a number.
+             *
+             * @param x The number.
+             */
+            @LuaFunction("first")
+            public final void pick(int x) {
+            }
+
+            /**
+             * Pick a string.
+             *
+             * @param x The string.
+             */
+            @LuaFunction("second")
+            public final void pick(String x) {
+            }
+        }
+        """;
+
+    private static final String APP = """
+        package app;
+
+        import dan200.computercraft.api.lua.ILuaAPI;
+        import dan200.computercraft.api.lua.LuaFunction;
+
+        /**
+         * Uses {@link lib.Lib}.
+         *
+         * @cc.module app
+         */
+        public class App implements ILuaAPI {
+            /**
+             * Calls {@link lib.Lib#pick(int)} and {@link lib.Lib#pick(String)}.
+             */
+            @LuaFunction
+            public final void run() {
+            }
+        }
+        """;
+
+    private static Path root;
+    private static Path library;
+    private static Path app;
+    private static Path index;
+
+    /**
+     * Document the library with {@code -symbol-index}. The app's sources are documented separately, with the library
+     * only on the source path.
+     */
+    @BeforeAll
+    public static void setup() throws IOException {
+        root = Files.createTempDirectory("cct_javadoc_link");
+        library = root.resolve("lib");
+        Files.createDirectories(library.resolve("lib"));
+        Files.writeString(library.resolve("lib/Lib.java"), LIBRARY);
+
+        app = root.resolve("app");
+        Files.createDirectories(app.resolve("app"));
+        Files.writeString(app.resolve("app/App.java"), APP);
+
+        index = root.resolve("index.json");
+        new DocletRunner(library.toFile(), Files.createDirectories(root.resolve("lib-out")))
+            .generate("-symbol-index", index.toString());
+    }
+
+    /**
+     * References to the library's modules and functions should be resolved from its index. Overloads are different
+     * functions, and so should resolve to different names.
+     */
+    @Test
+    public void resolvesReferences() throws IOException {
+        DocletRunner runner = new DocletRunner(app.toFile(), Files.createTempDirectory("cct_javadoc_link"))
+            .withSourcePath(library.toFile());
+        runner.generate("-link-index", index.toString());
+
+        String output = runner.readOutput("app.lua");
+        assertTrue(output.contains("Uses [`module!lib`]."), "Should link to the module:\n" + output);
+        assertTrue(output.contains("Calls [`module!lib.first`] and [`module!lib.second`]."), "Should link to each overload:\n" + output);
+    }
+
+    @Test
+    public void failsWithoutIndex() throws IOException {
+        DocletRunner runner = new DocletRunner(app.toFile(), Files.createTempDirectory("cct_javadoc_link"))
+            .withSourcePath(library.toFile());
+        assertFalse(runner.run(), "References to other projects should fail without an index");
+
+        List<String> problems = runner.problems();
+        assertEquals(3, problems.size(), "Expected an error for each reference, got " + problems);
+        assertTrue(problems.stream().allMatch(x -> x.contains("into a Lua reference")), "Unexpected errors " + problems);
+    }
+
+    @Test
+    public void rejectsUnsupportedVersion() throws IOException {
+        Path old = root.resolve("old.json");
+        Files.writeString(old, Files.readString(index).replace("\"version\": 2", "\"version\": 1"));
+
+        DocletRunner runner = new DocletRunner(app.toFile(), Files.createTempDirectory("cct_javadoc_link"))
+            .withSourcePath(library.toFile());
+        assertFalse(runner.run("-link-index", old.toString()), "Old indexes should be rejected");
+        assertEquals(
+            List.of("ERROR  Cannot read symbol index " + old + ": Unsupported version 1"), runner.problems(),
+            "Unexpected errors"
+        );
+    }
+}
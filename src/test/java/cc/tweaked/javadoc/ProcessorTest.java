@@ -0,0 +1,223 @@
+package cc.tweaked.javadoc;
+
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProcessorTest {
+    private static final Path INPUT = Path.of("src/test/java");
+    private static final Path GOLDEN = Path.of("src/test/resources");
+    private static final FileTime OLD = FileTime.fromMillis(946684800000L);
+
+    /**
+     * Documenting the test files as part of a normal compile should produce exactly the same files as the doclet.
+     */
+    @Test
+    public void matchesGoldens() throws IOException {
+        Path output = Files.createTempDirectory("cct_javadoc_processor");
+        compile(List.of(), "-Acc.javadoc.d=" + output);
+        assertGoldens(output);
+    }
+
+    @Test
+    public void disabledWithoutOutput() throws IOException {
+        Path output = Files.createTempDirectory("cct_javadoc_processor");
+        compile(List.of(), "-Acc.javadoc.writeIfChanged");
+        assertEquals(Map.of(), luaFiles(output), "Nothing should be written without -Acc.javadoc.d");
+    }
+
+    /**
+     * {@code -write-if-changed} is passed as {@code -Acc.javadoc.writeIfChanged}, and should behave as it does for the
+     * doclet.
+     */
+    @Test
+    public void writeIfChanged() throws IOException {
+        Path output = Files.createTempDirectory("cct_javadoc_processor");
+        compile(List.of(), "-Acc.javadoc.d=" + output, "-Acc.javadoc.writeIfChanged");
+        assertTrue(Files.exists(output.resolve(Shard.UNSHARDED_MANIFEST)), "Should write a manifest");
+
+        for (String module : luaFiles(output).keySet()) Files.setLastModifiedTime(output.resolve(module), OLD);
+        Files.writeString(output.resolve("basic.lua"), "-- Changed\n");
+
+        compile(List.of(), "-Acc.javadoc.d=" + output, "-Acc.javadoc.writeIfChanged");
+        assertGoldens(output);
+        for (String module : luaFiles(output).keySet()) {
+            FileTime modified = Files.getLastModifiedTime(output.resolve(module));
+            if (module.equals("basic.lua")) {
+                assertFalse(OLD.equals(modified), module + " should have been rewritten");
+            } else {
+                assertEquals(OLD, modified, module + " should not have been rewritten");
+            }
+        }
+    }
+
+    @Test
+    public void rejectsInvalidOptions() throws IOException {
+        Path output = Files.createTempDirectory("cct_javadoc_processor");
+        List<String> problems = compileWithErrors(List.of(), "-Acc.javadoc.d=" + output, "-Acc.javadoc.threads=lots");
+        assertEquals(List.of("ERROR Invalid value for -Acc.javadoc.threads: lots"), problems);
+        assertEquals(Map.of(), luaFiles(output), "Nothing should be written with invalid options");
+    }
+
+    /**
+     * The compilation should fail when the doclet does, such as when {@code -diff} finds differences.
+     */
+    @Test
+    public void reportsFailures() throws IOException {
+        Path output = Files.createTempDirectory("cct_javadoc_processor");
+        Path existing = Files.createTempDirectory("cct_javadoc_existing");
+        List<String> problems = compileWithErrors(List.of(), "-Acc.javadoc.d=" + output, "-Acc.javadoc.diff=" + existing);
+        assertEquals(
+            List.of("ERROR Generated documentation differs from " + existing, "ERROR Failed to generate Lua documentation"),
+            problems
+        );
+    }
+
+    /**
+     * When other processors generate sources, compilation takes several rounds, and elements from earlier rounds may be
+     * replaced. Classes from every round should still be documented.
+     */
+    @Test
+    public void documentsGeneratedSources() throws IOException {
+        Path output = Files.createTempDirectory("cct_javadoc_processor");
+        compile(List.of(new GeneratingProcessor()), "-Acc.javadoc.d=" + output);
+
+        String generated = Files.readString(output.resolve("generated.lua"));
+        assertTrue(generated.contains("function hello("), "Generated module should be documented:\n" + generated);
+
+        Files.delete(output.resolve("generated.lua"));
+        assertGoldens(output);
+    }
+
+    private static void compile(List<Processor> processors, String... options) throws IOException {
+        List<String> problems = compileWithErrors(processors, options);
+        assertEquals(List.of(), problems, "Compilation should succeed");
+    }
+
+    /**
+     * Compile the test files with {@link LuaDocProcessor} (and any other processors).
+     *
+     * @param processors Additional processors to run.
+     * @param options    Additional options to pass to javac.
+     * @return The errors and warnings reported by javac.
+     * @throws IOException If the sources could not be read.
+     */
+    private static List<String> compileWithErrors(List<Processor> processors, String... options) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+        StandardJavaFileManager fm = compiler.getStandardFileManager(collector, Locale.ROOT, StandardCharsets.UTF_8);
+
+        List<Path> sources;
+        try (Stream<Path> paths = Files.walk(INPUT)) {
+            sources = paths.filter(x -> x.toString().endsWith(".java")).collect(Collectors.toList());
+        }
+
+        Path generated = Files.createTempDirectory("cct_javadoc_generated");
+        fm.setLocationFromPaths(StandardLocation.SOURCE_OUTPUT, List.of(generated));
+
+        List<String> allOptions = new ArrayList<>(List.of("-proc:only", "-cp", System.getProperty("java.class.path")));
+        allOptions.addAll(Arrays.asList(options));
+
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fm, collector, allOptions, null, fm.getJavaFileObjectsFromPaths(sources));
+        List<Processor> allProcessors = new ArrayList<>();
+        allProcessors.add(new LuaDocProcessor());
+        allProcessors.addAll(processors);
+        task.setProcessors(allProcessors);
+        task.call();
+
+        return collector.getDiagnostics().stream()
+            .filter(x -> x.getKind() != Diagnostic.Kind.NOTE && x.getKind() != Diagnostic.Kind.OTHER)
+            .map(x -> x.getKind() + (x.getSource() == null ? "" : " " + x.getSource().getName() + ":" + x.getLineNumber()) + " " + x.getMessage(Locale.ROOT))
+            .collect(Collectors.toList());
+    }
+
+    private static void assertGoldens(Path output) throws IOException {
+        Map<String, byte[]> expected = luaFiles(GOLDEN), actual = luaFiles(output);
+        assertEquals(expected.keySet(), actual.keySet(), "Should write every module");
+        for (Map.Entry<String, byte[]> file : expected.entrySet()) {
+            assertArrayEquals(file.getValue(), actual.get(file.getKey()), file.getKey() + " should match the golden file");
+        }
+    }
+
+    private static Map<String, byte[]> luaFiles(Path directory) throws IOException {
+        Map<String, byte[]> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths.filter(x -> x.getFileName().toString().endsWith(".lua"))::iterator) {
+                files.put(path.getFileName().toString(), Files.readAllBytes(path));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Generates a module in the first round, forcing a second round of processing.
+     */
+    private static final class GeneratingProcessor extends AbstractProcessor {
+        private boolean generated;
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return Set.of("*");
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return SourceVersion.latestSupported();
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            if (generated) return false;
+            generated = true;
+
+            try (Writer writer = processingEnv.getFiler().createSourceFile("generated.Generated").openWriter()) {
+                writer.write("""
+                    package generated;
+
+                    import dan200.computercraft.api.lua.ILuaAPI;
+                    import dan200.computercraft.api.lua.LuaFunction;
+
+                    /**
+                     * A generated module.
+                     *
+                     * @cc.module generated
+                     */
+                    public class Generated implements ILuaAPI {
+                        /**
+                         * Say hello.
+                         */
+                        @LuaFunction
+                        public final void hello() {
+                        }
+                    }
+                    """);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return false;
+        }
+    }
+}
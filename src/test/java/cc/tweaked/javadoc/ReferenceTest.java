@@ -0,0 +1,67 @@
+package cc.tweaked.javadoc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReferenceTest {
+    private static final String MODULE = """
+        package refs;
+
+        import dan200.computercraft.api.lua.LuaFunction;
+
+        /**
+         * @cc.module refs
+         */
+        public class Refs {
+            public static final int LIMIT = 8;
+
+            /**
+             * Count at most {@value #LIMIT} items. See {@link #other}, or {@linkplain #other the other one}.
+             *
+             * @return The number of items.
+             * @throws IllegalStateException If we cannot count.
+             * @see #other
+             */
+            @LuaFunction
+            public final int count() {
+                return 0;
+            }
+
+            /**
+             * Another function.
+             */
+            @LuaFunction
+            public final void other() {
+            }
+        }
+        """;
+
+    /**
+     * Only references in links are rendered as Lua names, and so only those should be resolved. Other references (such
+     * as {@code {@value}}) cannot be converted into a Lua name, and so used to report an error.
+     */
+    @Test
+    public void onlyResolvesLinks() throws IOException {
+        Path sources = Files.createTempDirectory("cct_javadoc_refs");
+        Files.createDirectories(sources.resolve("refs"));
+        Files.writeString(sources.resolve("refs/Refs.java"), MODULE);
+
+        DocletRunner runner = new DocletRunner(sources.toFile());
+        runner.run();
+
+        // {@value} is not supported, but should only be reported once, as an unknown tag.
+        List<String> problems = runner.problems();
+        assertEquals(1, problems.size(), "Expected a single error, got " + problems);
+        assertTrue(problems.get(0).endsWith("Visiting unknown node VALUE"), "Unexpected error " + problems);
+
+        String output = runner.readOutput("refs.lua");
+        assertTrue(output.contains("See [`other`], or [the other one][`other`]."), "Should resolve links:\n" + output);
+        assertTrue(output.contains("@see other"), "Should resolve @see:\n" + output);
+    }
+}
@@ -0,0 +1,141 @@
+package cc.tweaked.javadoc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultCacheTest {
+    private static final String CHILD = """
+        package mod;
+
+        import dan200.computercraft.api.lua.LuaFunction;
+
+        /**
+         * @cc.module child
+         */
+        public class Child extends lib.Parent {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            @LuaFunction
+            public int add(int x, int y) {
+                return x + y;
+            }
+        }
+        """;
+
+    private static String parent(String description) {
+        return """
+            package lib;
+
+            public class Parent {
+                /**
+                 * %s
+                 *
+                 * @param x The first number to add.
+                 * @param y The second number to add.
+                 * @return The result of adding two numbers.
+                 */
+                public int add(int x, int y) {
+                    return 0;
+                }
+            }
+            """.formatted(description);
+    }
+
+    /**
+     * Check the cache is used when nothing has changed, and is invalidated when a class on the source path (which
+     * is not documented, but provides an inherited doc comment) changes.
+     */
+    @Test
+    public void hitMissAndInvalidate() throws IOException {
+        Path root = Files.createTempDirectory("cct_javadoc_result_cache");
+        Path sources = root.resolve("src"), library = root.resolve("lib"), output = root.resolve("out");
+        String cache = root.resolve("cache").toString();
+        write(sources.resolve("mod/Child.java"), CHILD);
+        write(library.resolve("lib/Parent.java"), parent("Add two numbers together."));
+        Files.createDirectories(output);
+
+        DocletRunner runner = new DocletRunner(sources.toFile(), output).withSourcePath(library.toFile());
+
+        runner.generate("-result-cache", cache);
+        assertFalse(restored(runner), "First run should miss the cache");
+        assertTrue(runner.readOutput("child.lua").contains("Add two numbers together."));
+
+        Files.delete(output.resolve("child.lua"));
+        runner.generate("-result-cache", cache);
+        assertTrue(restored(runner), "Second run should hit the cache");
+        assertTrue(runner.readOutput("child.lua").contains("Add two numbers together."));
+
+        // Change the inherited doc comment. This file is not documented, but the cache should still notice.
+        write(library.resolve("lib/Parent.java"), parent("Sum two numbers."));
+        runner.generate("-result-cache", cache);
+        assertFalse(restored(runner), "Changing an inherited comment should invalidate the cache");
+        assertTrue(runner.readOutput("child.lua").contains("Sum two numbers."));
+
+        runner.generate("-result-cache", cache);
+        assertTrue(restored(runner), "The new output should be cached");
+
+        // Options which affect the output are part of the key.
+        runner.generate("-result-cache", cache, "-shard", "1/1");
+        assertFalse(restored(runner), "Changing options should miss the cache");
+    }
+
+    /**
+     * Check the least recently used entries are evicted once the cache is too large.
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        Path directory = Files.createTempDirectory("cct_javadoc_result_cache");
+        ResultCache cache = new ResultCache(directory, 3000);
+
+        // Random data does not compress, so each entry is a little over 1000 bytes (but under 1500).
+        put(cache, "a");
+        put(cache, "b");
+        Files.setLastModifiedTime(directory.resolve("a.zip"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(directory.resolve("b.zip"), FileTime.fromMillis(2000));
+
+        // Using "a" makes it more recent than "b", so "b" is evicted first.
+        try (ResultCache.Entry entry = cache.get("a")) {
+            assertTrue(entry != null, "Entry a should be cached");
+        }
+        put(cache, "c");
+
+        assertTrue(Files.exists(directory.resolve("a.zip")), "Entry a was recently used");
+        assertFalse(Files.exists(directory.resolve("b.zip")), "Entry b should be evicted");
+        assertTrue(Files.exists(directory.resolve("c.zip")), "Entry c was just added");
+        assertTrue(cache.get("b") == null, "Evicted entries should miss");
+    }
+
+    private static void put(ResultCache cache, String key) throws IOException {
+        byte[] contents = new byte[1000];
+        new Random(key.hashCode()).nextBytes(contents);
+
+        try (ResultCache.Recorder recorder = cache.record(key)) {
+            assertTrue(recorder != null, "Should be able to write to the cache");
+            try (OutputStream out = recorder.open("module.lua")) {
+                out.write(contents);
+            }
+            recorder.commit(Map.of(), null);
+        }
+    }
+
+    private static boolean restored(DocletRunner runner) {
+        return runner.diagnostics().stream().anyMatch(x -> x.getMessage(Locale.ROOT).contains("from the result cache"));
+    }
+
+    private static void write(Path path, String contents) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, contents);
+    }
+}
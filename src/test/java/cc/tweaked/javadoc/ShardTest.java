@@ -0,0 +1,157 @@
+package cc.tweaked.javadoc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardTest {
+    private static final Path GOLDEN = Path.of("src/test/resources");
+
+    /**
+     * Generate each shard into its own directory, and check merging them produces exactly the golden files.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 3, 5 })
+    public void mergedShardsMatchGoldens(int count) throws IOException {
+        List<Path> shards = generate(count);
+
+        Path merged = Files.createTempDirectory("cct_javadoc_merged");
+        LuaDocMerge.merge(merged, shards);
+
+        Map<String, byte[]> expected = luaFiles(GOLDEN), actual = luaFiles(merged);
+        assertEquals(expected.keySet(), actual.keySet(), "Merged " + count + " shards should contain every module");
+        for (Map.Entry<String, byte[]> file : expected.entrySet()) {
+            assertArrayEquals(file.getValue(), actual.get(file.getKey()), file.getKey() + " should match the golden file");
+        }
+    }
+
+    /**
+     * Merging into a previous merge's output should delete modules which are no longer generated, but leave any other
+     * files alone.
+     */
+    @Test
+    public void mergeOnlyDeletesStaleModules() throws IOException {
+        List<Path> shards = generate(2);
+        Path merged = Files.createTempDirectory("cct_javadoc_merged");
+        Files.writeString(merged.resolve("handwritten.lua"), "-- Not generated\n");
+        LuaDocMerge.merge(merged, shards);
+        assertTrue(Files.exists(merged.resolve("shard-1-of-2.txt")), "Manifests should be copied to the output");
+
+        // Pretend a previous merge wrote a module which has since been removed.
+        Files.writeString(merged.resolve("removed.lua"), "-- Removed\n");
+        Files.writeString(merged.resolve("shard-1-of-2.txt"), "removed\n", StandardOpenOption.APPEND);
+
+        LuaDocMerge.merge(merged, shards);
+        assertFalse(Files.exists(merged.resolve("removed.lua")), "Stale modules should be deleted");
+        assertTrue(Files.exists(merged.resolve("handwritten.lua")), "Other modules should be kept");
+        assertFalse(Shard.Manifest.read(merged.resolve("shard-1-of-2.txt")).modules().contains("removed"), "Manifests should be replaced");
+
+        Map<String, byte[]> expected = luaFiles(GOLDEN), actual = luaFiles(merged);
+        actual.remove("handwritten.lua");
+        assertEquals(expected.keySet(), actual.keySet(), "Merged output should contain every module");
+    }
+
+    /**
+     * Merging into the output of an unsharded {@code -write-if-changed} run should delete its stale modules, and
+     * replace its manifest with the shards' ones.
+     */
+    @Test
+    public void mergeReplacesUnshardedManifest() throws IOException {
+        List<Path> shards = generate(2);
+        Path merged = Files.createTempDirectory("cct_javadoc_merged");
+        Files.writeString(merged.resolve("removed.lua"), "-- Removed\n");
+        Files.writeString(merged.resolve(Shard.UNSHARDED_MANIFEST), "cct-javadoc shard 1/1\nremoved\n");
+
+        LuaDocMerge.merge(merged, shards);
+        assertFalse(Files.exists(merged.resolve("removed.lua")), "Stale modules should be deleted");
+        assertFalse(Files.exists(merged.resolve(Shard.UNSHARDED_MANIFEST)), "The unsharded manifest should be removed");
+        assertTrue(Files.exists(merged.resolve("shard-1-of-2.txt")), "Manifests should be copied to the output");
+    }
+
+    @Test
+    public void rejectsMissingShard() throws IOException {
+        List<Path> shards = generate(3);
+        shards.remove(1);
+
+        Path merged = Files.createTempDirectory("cct_javadoc_merged").resolve("out");
+        IOException error = assertThrows(IOException.class, () -> LuaDocMerge.merge(merged, shards), "Merging should fail");
+        assertEquals("Missing shard 2/3", error.getMessage());
+        assertFalse(Files.exists(merged), "Nothing should be written when a shard is missing");
+    }
+
+    @Test
+    public void rejectsMismatchedShardCounts() throws IOException {
+        List<Path> shards = new ArrayList<>(generate(2));
+        shards.add(generate(3).get(2));
+
+        Path merged = Files.createTempDirectory("cct_javadoc_merged").resolve("out");
+        IOException error = assertThrows(IOException.class, () -> LuaDocMerge.merge(merged, shards), "Merging should fail");
+        assertTrue(error.getMessage().endsWith("is one of 3 shards, but expected 2"), "Unexpected error " + error.getMessage());
+        assertFalse(Files.exists(merged), "Nothing should be written when shards do not match");
+    }
+
+    @Test
+    public void rejectsDuplicateShard() throws IOException {
+        List<Path> shards = new ArrayList<>(generate(2));
+        shards.add(generate(2).get(0));
+
+        Path merged = Files.createTempDirectory("cct_javadoc_merged").resolve("out");
+        IOException error = assertThrows(IOException.class, () -> LuaDocMerge.merge(merged, shards), "Merging should fail");
+        assertTrue(error.getMessage().startsWith("Shard 1 found in both"), "Unexpected error " + error.getMessage());
+    }
+
+    @Test
+    public void rejectsMalformedManifest() throws IOException {
+        List<Path> shards = generate(2);
+        Files.writeString(shards.get(1).resolve("shard-2-of-2.txt"), "not a manifest\n");
+
+        Path merged = Files.createTempDirectory("cct_javadoc_merged").resolve("out");
+        IOException error = assertThrows(IOException.class, () -> LuaDocMerge.merge(merged, shards), "Merging should fail");
+        assertTrue(error.getMessage().contains("is not a shard manifest"), "Unexpected error " + error.getMessage());
+        assertFalse(Files.exists(merged), "Nothing should be written when a manifest is malformed");
+    }
+
+    @Test
+    public void rejectsNoManifests() throws IOException {
+        Path empty = Files.createTempDirectory("cct_javadoc_shard");
+        Path merged = Files.createTempDirectory("cct_javadoc_merged").resolve("out");
+        IOException error = assertThrows(IOException.class, () -> LuaDocMerge.merge(merged, List.of(empty)), "Merging should fail");
+        assertEquals("No shard manifests found", error.getMessage());
+    }
+
+    /**
+     * Generate every shard of the test files, each into its own directory.
+     */
+    private static List<Path> generate(int count) throws IOException {
+        List<Path> shards = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            DocletRunner runner = DocletRunner.toDirectory();
+            runner.generate("-shard", i + "/" + count);
+            assertTrue(Files.exists(runner.output().resolve("shard-" + i + "-of-" + count + ".txt")), "Shard " + i + " should write a manifest");
+            shards.add(runner.output());
+        }
+        return shards;
+    }
+
+    private static Map<String, byte[]> luaFiles(Path directory) throws IOException {
+        Map<String, byte[]> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths.filter(x -> x.getFileName().toString().endsWith(".lua"))::iterator) {
+                files.put(path.getFileName().toString(), Files.readAllBytes(path));
+            }
+        }
+        return files;
+    }
+}
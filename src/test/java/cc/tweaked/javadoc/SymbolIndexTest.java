@@ -0,0 +1,54 @@
+package cc.tweaked.javadoc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SymbolIndexTest {
+    private static final boolean regenerate = "true".equalsIgnoreCase(System.getProperty("cc.regenerate"));
+    private static final Path GOLDEN = Path.of("src/test/resources/symbols.json");
+
+    /**
+     * The symbol index should match the golden file, however many threads are used to render modules.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "1", "4" })
+    public void checkEqual(String threads) throws IOException {
+        Path index = Files.createTempDirectory("cct_javadoc_index").resolve("symbols.json");
+        DocletRunner.toDirectory().generate("-threads", threads, "-symbol-index", index.toString());
+
+        if (regenerate) Files.copy(index, GOLDEN, StandardCopyOption.REPLACE_EXISTING);
+        assertEquals(Files.readString(GOLDEN), Files.readString(index), "Symbol index should be the same.");
+    }
+
+    /**
+     * Every module in the index should be written, and every function in the index should appear in its module.
+     */
+    @Test
+    public void matchesModules() throws IOException {
+        Path index = Files.createTempDirectory("cct_javadoc_index").resolve("symbols.json");
+        DocletRunner runner = DocletRunner.toDirectory();
+        runner.generate("-symbol-index", index.toString());
+
+        Map<?, ?> root = (Map<?, ?>) JsonReader.parse(Files.readString(index));
+        List<?> modules = (List<?>) root.get("modules");
+        assertEquals(8, modules.size(), "Expected every module in the index");
+        for (Object moduleObj : modules) {
+            Map<?, ?> module = (Map<?, ?>) moduleObj;
+            String contents = runner.readOutput(module.get("name") + ".lua");
+            for (Object functionObj : (List<?>) module.get("functions")) {
+                String name = (String) ((Map<?, ?>) functionObj).get("name");
+                assertTrue(contents.contains("function " + name + "("), module.get("name") + " should contain " + name);
+            }
+        }
+    }
+}
@@ -5,15 +5,75 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class Tests {
+    private static final Pattern CACHE_NOTE = Pattern.compile("Snippet cache: (\\d+) hits, (\\d+) misses\\.");
     private static final boolean regenerate = "true".equalsIgnoreCase(System.getProperty("cc.regenerate"));
     private static DocletRunner runner;
+    private static DocletRunner directoryRunner;
+    private static DocletRunner parallelRunner;
+    private static DocletRunner cachedRunner;
+    private static DocletRunner zipRunner;
+    private static DocletRunner stdoutRunner;
 
     @BeforeAll
     public static void setup() throws IOException {
         runner = new DocletRunner();
         runner.generate();
+
+        // Most runs write to memory, so also check writing to disk, as a normal run would.
+        directoryRunner = DocletRunner.toDirectory();
+        directoryRunner.generate();
+
+        parallelRunner = new DocletRunner();
+        parallelRunner.generate("-threads", "4");
+
+        // Run twice with the same cache, so the second run reuses snippets from the first.
+        Path cache = Files.createTempDirectory("cct_javadoc_cache");
+        DocletRunner uncachedRunner = new DocletRunner();
+        uncachedRunner.generate("-cache-dir", cache.toString());
+        assertTrue(cacheUsage(uncachedRunner)[1] > 0, "First run should miss the cache");
+
+        cachedRunner = new DocletRunner();
+        cachedRunner.generate("-cache-dir", cache.toString());
+        int[] usage = cacheUsage(cachedRunner);
+        assertTrue(usage[0] > 0, "Second run should hit the cache");
+        assertEquals(0, usage[1], "Second run should not miss the cache");
+
+        // Write archives on several threads, to check entries are written one at a time.
+        zipRunner = DocletRunner.toZip();
+        zipRunner.generate("-threads", "4");
+
+        // Write a tar archive to stdout, with notes enabled, to check nothing else is printed alongside it.
+        stdoutRunner = new DocletRunner();
+        stdoutRunner.generateToStdout("-timings", "-threads", "4");
+    }
+
+    /**
+     * Find the snippet cache's hits and misses, from the note printed at the end of a run.
+     *
+     * @param runner The runner to check.
+     * @return The number of hits and misses.
+     */
+    private static int[] cacheUsage(DocletRunner runner) {
+        List<String> notes = runner.diagnostics().stream()
+            .map(x -> x.getMessage(Locale.ROOT))
+            .filter(x -> CACHE_NOTE.matcher(x).matches())
+            .collect(Collectors.toList());
+        assertEquals(1, notes.size(), "Should report the snippet cache's usage once");
+
+        Matcher matcher = CACHE_NOTE.matcher(notes.get(0));
+        assertTrue(matcher.matches());
+        return new int[]{ Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)) };
     }
 
     @ParameterizedTest
@@ -23,6 +83,7 @@ public class Tests {
         "types.One",
         "types.Two",
         "types.Adder",
+        "types.Chained",
         "foo",
         "bar.Type",
     })
@@ -30,6 +91,11 @@ public class Tests {
         String fullName = name + ".lua";
         try {
             runner.compare(fullName);
+            directoryRunner.compare(fullName);
+            parallelRunner.compare(fullName);
+            cachedRunner.compare(fullName);
+            zipRunner.compare(fullName);
+            stdoutRunner.compare(fullName);
         } finally {
             if (regenerate) runner.update(fullName);
         }
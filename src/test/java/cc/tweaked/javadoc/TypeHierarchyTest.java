@@ -0,0 +1,157 @@
+package cc.tweaked.javadoc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TypeHierarchyTest {
+    private static final String BASE = """
+        package hierarchy;
+
+        import dan200.computercraft.api.lua.LuaFunction;
+
+        public abstract class Base<T> {
+            @LuaFunction
+            public final String name() {
+                return "";
+            }
+        }
+        """;
+
+    private static final String STRINGS = """
+        package hierarchy;
+
+        import dan200.computercraft.api.lua.ILuaAPI;
+
+        /**
+         * @cc.module strings
+         */
+        public class Strings extends Base<String> implements ILuaAPI {
+        }
+        """;
+
+    private static final String API = """
+        package hierarchy;
+
+        import dan200.computercraft.api.lua.ILuaAPI;
+
+        public interface Api<T> extends ILuaAPI {
+        }
+        """;
+
+    private static final String NAMED_API = """
+        package hierarchy;
+
+        public interface NamedApi extends Api<String> {
+        }
+        """;
+
+    private static final String CHAINED = """
+        package hierarchy;
+
+        import dan200.computercraft.api.lua.LuaFunction;
+
+        /**
+         * @cc.module chained
+         */
+        public class Chained implements NamedApi {
+            @LuaFunction
+            public final void hello() {
+            }
+        }
+        """;
+
+    private static final String DEVICE = """
+        package hierarchy;
+
+        import dan200.computercraft.api.lua.LuaFunction;
+        import dan200.computercraft.api.peripheral.IPeripheral;
+
+        public abstract class Device<T> implements IPeripheral {
+            @LuaFunction
+            public final int size() {
+                return 0;
+            }
+        }
+        """;
+
+    private static final String DRIVE = """
+        package hierarchy;
+
+        /**
+         * @cc.module drive
+         */
+        public class Drive extends Device<Integer> {
+        }
+        """;
+
+    private static final String UNRELATED = """
+        package hierarchy;
+
+        import dan200.computercraft.api.lua.ILuaAPI;
+        import dan200.computercraft.api.lua.LuaFunction;
+
+        /**
+         * @cc.module unrelated
+         */
+        public class Unrelated implements ILuaAPI {
+            @LuaFunction
+            public final void other() {
+            }
+        }
+        """;
+
+    /**
+     * Modules which extend a generic class (or implement a generic interface) should be classified by, and include the
+     * methods of, that class. Subtyping is checked on erased types, so {@code Strings extends Base<String>} includes
+     * the methods declared on {@code Base<T>}.
+     */
+    @Test
+    public void resolvesGenericSupertypesAndInterfaceChains() throws IOException {
+        Path root = Files.createTempDirectory("cct_javadoc_hierarchy");
+        Path sources = root.resolve("src");
+        Files.createDirectories(sources.resolve("hierarchy"));
+        Map<String, String> files = Map.of(
+            "Base", BASE,
+            "Strings", STRINGS,
+            "Api", API,
+            "NamedApi", NAMED_API,
+            "Chained", CHAINED,
+            "Device", DEVICE,
+            "Drive", DRIVE,
+            "Unrelated", UNRELATED
+        );
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            Files.writeString(sources.resolve("hierarchy/" + file.getKey() + ".java"), file.getValue());
+        }
+
+        DocletRunner runner = new DocletRunner(sources.toFile(), Files.createDirectories(root.resolve("out")));
+        runner.generate();
+
+        // Methods declared on a generic superclass.
+        String strings = runner.readOutput("strings.lua");
+        assertTrue(strings.contains("@module[kind=module] strings"), "strings should be an API:\n" + strings);
+        assertTrue(strings.contains("function name() end"), "strings should include Base<T>.name:\n" + strings);
+
+        // Kinds found through a chain of (generic) interfaces.
+        String chained = runner.readOutput("chained.lua");
+        assertTrue(chained.contains("@module[kind=module] chained"), "chained should be an API:\n" + chained);
+        assertTrue(chained.contains("function hello() end"), "chained should include its own methods:\n" + chained);
+
+        // Both of the above, for a peripheral.
+        String drive = runner.readOutput("drive.lua");
+        assertTrue(drive.contains("@module[kind=peripheral] drive"), "drive should be a peripheral:\n" + drive);
+        assertTrue(drive.contains("function size() end"), "drive should include Device<T>.size:\n" + drive);
+
+        // Methods should not leak into unrelated modules.
+        String unrelated = runner.readOutput("unrelated.lua");
+        assertTrue(unrelated.contains("function other() end"), "unrelated should include its own methods:\n" + unrelated);
+        assertFalse(unrelated.contains("function name()") || unrelated.contains("function size()"), "unrelated should not include other methods:\n" + unrelated);
+        assertFalse(strings.contains("function size()") || drive.contains("function name()"), "Modules should not include their siblings' methods");
+    }
+}
@@ -0,0 +1,136 @@
+package cc.tweaked.javadoc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteIfChangedTest {
+    private static final Path GOLDEN = Path.of("src/test/resources");
+    private static final FileTime OLD = FileTime.fromMillis(946684800000L);
+
+    /**
+     * Only modules whose contents differ should be rewritten, including when the existing file is a prefix of the new
+     * contents (or the other way around).
+     */
+    @Test
+    public void onlyRewritesChangedFiles() throws IOException {
+        DocletRunner runner = DocletRunner.toDirectory();
+        Path output = runner.output();
+        runner.generate("-write-if-changed");
+        List<String> modules = goldenFiles();
+        for (String module : modules) assertGolden(output, module);
+
+        for (String module : modules) Files.setLastModifiedTime(output.resolve(module), OLD);
+
+        // Change a byte without changing the length.
+        byte[] basic = Files.readAllBytes(output.resolve("basic.lua"));
+        basic[basic.length / 2] ^= 1;
+        Files.write(output.resolve("basic.lua"), basic);
+        // Truncate a file, so the existing file is a prefix of the new one.
+        byte[] foo = Files.readAllBytes(output.resolve("foo.lua"));
+        Files.write(output.resolve("foo.lua"), Arrays.copyOf(foo, foo.length / 2));
+        // Extend a file, so the new file is a prefix of the existing one.
+        Files.writeString(output.resolve("bar.Type.lua"), "-- Extra\n", StandardOpenOption.APPEND);
+        List<String> changed = List.of("basic.lua", "foo.lua", "bar.Type.lua");
+        for (String module : changed) Files.setLastModifiedTime(output.resolve(module), OLD);
+
+        runner.generate("-write-if-changed");
+        for (String module : modules) {
+            assertGolden(output, module);
+            FileTime modified = Files.getLastModifiedTime(output.resolve(module));
+            if (changed.contains(module)) {
+                assertFalse(OLD.equals(modified), module + " should have been rewritten");
+            } else {
+                assertEquals(OLD, modified, module + " should not have been rewritten");
+            }
+        }
+    }
+
+    /**
+     * Modules which a previous run generated, but which no longer exist, should be deleted. Any other files should be
+     * left alone.
+     */
+    @Test
+    public void deletesStaleModules() throws IOException {
+        DocletRunner runner = DocletRunner.toDirectory();
+        Path output = runner.output();
+
+        // Files which exist before the first run were not generated by us, and so should never be deleted.
+        Files.writeString(output.resolve("handwritten.lua"), "-- Not generated\n");
+        Files.writeString(output.resolve("notes.txt"), "Not generated\n");
+
+        runner.generate("-write-if-changed");
+        Path manifest = output.resolve(Shard.UNSHARDED_MANIFEST);
+        assertTrue(Files.exists(manifest), "Should write a manifest");
+        assertFalse(Files.exists(output.resolve("shard-1-of-1.txt")), "Unsharded runs should not write a shard manifest");
+        assertEquals(
+            goldenFiles().stream().map(x -> x.substring(0, x.length() - 4)).sorted().collect(Collectors.toList()),
+            Shard.Manifest.read(manifest).modules().stream().sorted().collect(Collectors.toList()),
+            "Manifest should list every module"
+        );
+
+        // Pretend a previous run generated a module which has since been removed.
+        Files.writeString(output.resolve("removed.lua"), "-- Removed\n");
+        Files.writeString(manifest, "removed\n", StandardOpenOption.APPEND);
+
+        runner.generate("-write-if-changed");
+        assertFalse(Files.exists(output.resolve("removed.lua")), "Stale modules should be deleted");
+        assertTrue(Files.exists(output.resolve("handwritten.lua")), "Other modules should be kept");
+        assertTrue(Files.exists(output.resolve("notes.txt")), "Other files should be kept");
+        assertFalse(Shard.Manifest.read(manifest).modules().contains("removed"), "Manifest should not list deleted modules");
+        for (String module : goldenFiles()) assertGolden(output, module);
+    }
+
+    /**
+     * Shards may share an output directory, so should only delete their own stale modules.
+     */
+    @Test
+    public void shardsOnlyDeleteTheirModules() throws IOException {
+        Shard first = Shard.parse("1/2");
+        String mine = removedModule(first, true), theirs = removedModule(first, false);
+
+        DocletRunner runner = DocletRunner.toDirectory();
+        Path output = runner.output();
+        runner.generate("-write-if-changed", "-shard", "1/2");
+
+        Path manifest = output.resolve("shard-1-of-2.txt");
+        Files.writeString(output.resolve(mine + ".lua"), "-- Removed\n");
+        Files.writeString(output.resolve(theirs + ".lua"), "-- Removed\n");
+        Files.writeString(manifest, mine + "\n" + theirs + "\n", StandardOpenOption.APPEND);
+
+        runner.generate("-write-if-changed", "-shard", "1/2");
+        assertFalse(Files.exists(output.resolve(mine + ".lua")), "Stale modules from this shard should be deleted");
+        assertTrue(Files.exists(output.resolve(theirs + ".lua")), "Modules from other shards should be kept");
+    }
+
+    private static String removedModule(Shard shard, boolean contains) {
+        return IntStream.iterate(0, i -> i + 1).mapToObj(i -> "removed" + i)
+            .filter(x -> shard.contains(x) == contains).findFirst().orElseThrow();
+    }
+
+    private static List<String> goldenFiles() throws IOException {
+        try (Stream<Path> files = Files.list(GOLDEN)) {
+            return files.map(x -> x.getFileName().toString()).filter(x -> x.endsWith(".lua")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static void assertGolden(Path output, String name) throws IOException {
+        assertEquals(
+            Files.readString(GOLDEN.resolve(name), StandardCharsets.UTF_8),
+            Files.readString(output.resolve(name), StandardCharsets.UTF_8),
+            name + " should match the golden file"
+        );
+    }
+}
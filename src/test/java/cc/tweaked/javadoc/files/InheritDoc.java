@@ -29,4 +29,28 @@ public class InheritDoc {
             return super.add(x, y);
         }
     }
+
+    public static class Middle extends Base {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int add(int x, int y) {
+            return super.add(x, y);
+        }
+    }
+
+    /**
+     * @cc.module types.Chained
+     */
+    public static class Chained extends Middle {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @LuaFunction
+        public int add(int x, int y) {
+            return super.add(x, y);
+        }
+    }
 }
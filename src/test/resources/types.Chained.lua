@@ -0,0 +1,18 @@
+--- @module types
+
+--[[- 
+@source src/test/java/cc/tweaked/javadoc/files/InheritDoc.java:46
+@type Chained
+]]
+local Chained = {}
+
+--[[- Add two numbers together.
+
+
+
+@source src/test/java/cc/tweaked/javadoc/files/InheritDoc.java:50
+@tparam number x The first number to add.
+@tparam number y The second number to add.
+@treturn number The result of adding two numbers.
+]]
+function Chained.add(x, y) end